@@ -0,0 +1,76 @@
+package com.chatty.websocket;
+
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Load comparison of the platform and virtual-thread channel executors.
+ *
+ * Sends a burst of messages through an {@link ExecutorSubscribableChannel}
+ * whose handler blocks for a fixed time, standing in for a Mongo, Redis or
+ * Kafka call, and reports throughput and send-to-handled latency. The
+ * platform executor is Spring's default clientInboundChannel pool (two
+ * threads per CPU). Each mode runs twice; the first run is warm-up.
+ *
+ * Arguments: message count (default 5000) and handler block time in ms
+ * (default 20). The virtual mode needs a Java 21 runtime. See
+ * {@code src/bench/README.md} for how to run it.
+ */
+public class ChannelExecutorBench {
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long blockMs = args.length > 1 ? Long.parseLong(args[1]) : 20;
+
+        for (String mode : new String[]{"platform", "virtual", "platform", "virtual"}) {
+            ThreadPoolTaskExecutor executor = "virtual".equals(mode)
+                    ? new VirtualThreadChannelExecutor("bench-virtual-", 1000)
+                    : platformExecutor();
+            executor.initialize();
+            run(mode, new ExecutorSubscribableChannel(executor), messages, blockMs);
+            executor.shutdown();
+        }
+    }
+
+    private static ThreadPoolTaskExecutor platformExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        executor.setThreadNamePrefix("bench-platform-");
+        return executor;
+    }
+
+    private static void run(String mode, ExecutorSubscribableChannel channel, int messages, long blockMs)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(messages);
+        long[] latencies = new long[messages];
+        channel.subscribe(message -> {
+            try {
+                Thread.sleep(blockMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int index = (Integer) message.getHeaders().get("index");
+            latencies[index] = System.nanoTime() - (Long) message.getHeaders().get("sentAt");
+            done.countDown();
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            channel.send(MessageBuilder.withPayload("x")
+                    .setHeader("index", i)
+                    .setHeader("sentAt", System.nanoTime())
+                    .build());
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-8s messages=%d block=%dms  throughput=%.0f msg/s  p50=%.0fms p99=%.0fms max=%.0fms%n",
+                mode, messages, blockMs, messages / seconds,
+                latencies[messages / 2] / 1e6, latencies[(int) (messages * 0.99)] / 1e6, latencies[messages - 1] / 1e6);
+    }
+}
@@ -0,0 +1,136 @@
+package com.chatty.websocket;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Encode-and-send cost of one room broadcast, stock encoder vs the shared
+ * frame encoder.
+ *
+ * One thread fans a 700-byte chat message out to N subscriptions through
+ * encode and session send, against a session whose socket discards the
+ * bytes. Reports thread CPU time and allocated bytes per broadcast, so
+ * container-side writes are not included. The stock path is
+ * {@link StompEncoder} plus a {@link TextMessage} per subscriber; the shared
+ * path is what {@link SlowConsumerSessionDecorator} does with
+ * {@link SharedFrameStompEncoder} output on a native session.
+ *
+ * Arguments: subscriber counts (default 100 1000 10000). Needs a HotSpot
+ * JVM for per-thread allocation counters.
+ */
+public class SharedFrameBench {
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int[] subscriberCounts = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100, 1000, 10000};
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        WebSocketSession session = discardingSession();
+        String body = chatMessageJson();
+
+        for (int subscribers : subscriberCounts) {
+            List<Map<String, Object>> headers = subscriptionHeaders(subscribers);
+            StompEncoder stock = new StompEncoder();
+            SharedFrameStompEncoder shared = new SharedFrameStompEncoder();
+            int rounds = Math.max(20, 200000 / subscribers);
+
+            Runnable stockBroadcast = () -> {
+                byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+                for (Map<String, Object> subscription : headers) {
+                    send(session, new TextMessage(stock.encode(subscription, payload)));
+                }
+            };
+            Runnable sharedBroadcast = () -> {
+                byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+                for (Map<String, Object> subscription : headers) {
+                    WebSocketMessage<?> message = shared.claim(new TextMessage(shared.encode(subscription, payload)));
+                    try {
+                        ((SharedFrameMessage) message).sendTo(session, true);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+
+            // First pass warms up both paths
+            measure(threads, rounds, stockBroadcast);
+            measure(threads, rounds, sharedBroadcast);
+            long[] stockCost = measure(threads, rounds, stockBroadcast);
+            long[] sharedCost = measure(threads, rounds, sharedBroadcast);
+            System.out.printf("subscribers=%5d  stock: %8.1f us cpu %9.1f KB alloc | shared: %8.1f us cpu %9.1f KB alloc  per broadcast%n",
+                    subscribers, stockCost[0] / 1e3, stockCost[1] / 1024.0, sharedCost[0] / 1e3, sharedCost[1] / 1024.0);
+        }
+    }
+
+    private static WebSocketSession discardingSession() {
+        WebSocketSession stub = (WebSocketSession) Proxy.newProxyInstance(SharedFrameBench.class.getClassLoader(),
+                new Class<?>[]{WebSocketSession.class}, (proxy, method, methodArgs) -> null);
+        return new WebSocketSessionDecorator(stub) {
+            @Override
+            public void sendMessage(WebSocketMessage<?> message) {
+                sink += message.getPayloadLength();
+            }
+        };
+    }
+
+    private static String chatMessageJson() {
+        StringBuilder json = new StringBuilder("{\"id\":\"6530f1a2b4c5d6e7f8a9b0c1\",\"roomId\":\"general\","
+                + "\"sender\":\"alice\",\"seq\":123456,\"content\":\"");
+        while (json.length() < 560) {
+            json.append("lorem ipsum dolor sit amet ");
+        }
+        return json.append("\",\"timestamp\":\"2026-10-19T10:00:00Z\",\"type\":\"CHAT\"}").toString();
+    }
+
+    private static List<Map<String, Object>> subscriptionHeaders(int subscribers) {
+        return IntStream.range(0, subscribers).mapToObj(i -> {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            accessor.setSubscriptionId("sub-" + i);
+            accessor.setMessageId("m" + i + "-42");
+            accessor.setDestination("/topic/public.general");
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            accessor.setNativeHeader("seq", "123456");
+            accessor.setSessionId("s" + i);
+            return (Map<String, Object>) accessor.getMessageHeaders();
+        }).toList();
+    }
+
+    private static void send(WebSocketSession session, WebSocketMessage<?> message) {
+        try {
+            session.sendMessage(message);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Thread CPU nanos and allocated bytes per round
+    private static long[] measure(com.sun.management.ThreadMXBean threads, int rounds, Runnable broadcast) {
+        long threadId = Thread.currentThread().getId();
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            broadcast.run();
+        }
+        return new long[]{
+                (threads.getCurrentThreadCpuTime() - cpuBefore) / rounds,
+                (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / rounds
+        };
+    }
+}
@@ -31,6 +31,9 @@ public class KafkaConfig {
     @Value("${kafka.topics.notifications}")
     private String notificationsTopic;
 
+    @Value("${kafka.topics.dead-letter:chat.dead-letter}")
+    private String deadLetterTopic;
+
     @Value("${kafka.partitions:3}")
     private int partitions;
 
@@ -117,4 +120,12 @@ public class KafkaConfig {
                 .replicas(replicas)
                 .build();
     }
+
+    @Bean
+    public NewTopic deadLetterTopic() {
+        return TopicBuilder.name(deadLetterTopic)
+                .partitions(1)
+                .replicas(replicas)
+                .build();
+    }
 }
@@ -1,17 +1,20 @@
 package com.chatty.config;
 
 import com.chatty.dto.MessageDTO;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.config.SaslConfigs;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
@@ -50,6 +53,13 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.ssl.key-password:#{null}}")
     private String keyPassword;
 
+    // Listener threads per topic on this node; more than the partition count leaves threads idle
+    @Value("${kafka.consumer.concurrency:${kafka.partitions:1}}")
+    private int concurrency;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Bean
     public ConsumerFactory<String, MessageDTO> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -86,7 +96,10 @@ public class KafkaConsumerConfig {
             }
         }
 
-        return new DefaultKafkaConsumerFactory<>(props);
+        DefaultKafkaConsumerFactory<String, MessageDTO> factory = new DefaultKafkaConsumerFactory<>(props);
+        // Client metrics, including records-lag-max per partition
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
     }
 
     @Bean
@@ -94,6 +107,7 @@ public class KafkaConsumerConfig {
         ConcurrentKafkaListenerContainerFactory<String, MessageDTO> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(concurrency);
         return factory;
     }
 }
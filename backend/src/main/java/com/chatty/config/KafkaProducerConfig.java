@@ -1,20 +1,26 @@
 package com.chatty.config;
 
 import com.chatty.dto.MessageDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.config.SaslConfigs;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -47,14 +53,113 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.ssl.key-password:#{null}}")
     private String keyPassword;
 
+    // Chat messages: durable, ordered, deduplicated on retry
+    @Value("${kafka.producer.chat.linger-ms:5}")
+    private int chatLingerMs;
+
+    @Value("${kafka.producer.chat.batch-size:65536}")
+    private int chatBatchSize;
+
+    @Value("${kafka.producer.chat.compression-type:lz4}")
+    private String chatCompressionType;
+
+    @Value("${kafka.producer.chat.buffer-memory:33554432}")
+    private long chatBufferMemory;
+
+    @Value("${kafka.producer.chat.max-block-ms:250}")
+    private long chatMaxBlockMs;
+
+    @Value("${kafka.producer.chat.delivery-timeout-ms:30000}")
+    private int chatDeliveryTimeoutMs;
+
+    // Notifications and other ephemeral records: best effort, lowest cost
+    @Value("${kafka.producer.ephemeral.linger-ms:20}")
+    private int ephemeralLingerMs;
+
+    @Value("${kafka.producer.ephemeral.batch-size:16384}")
+    private int ephemeralBatchSize;
+
+    @Value("${kafka.producer.ephemeral.compression-type:lz4}")
+    private String ephemeralCompressionType;
+
+    @Value("${kafka.producer.ephemeral.buffer-memory:8388608}")
+    private long ephemeralBufferMemory;
+
+    @Value("${kafka.producer.ephemeral.max-block-ms:50}")
+    private long ephemeralMaxBlockMs;
+
+    @Value("${kafka.producer.ephemeral.delivery-timeout-ms:5000}")
+    private int ephemeralDeliveryTimeoutMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Chat message producer. Idempotence keeps per-partition order and avoids
+     * duplicates across retries, which run until delivery.timeout.ms. A short
+     * max.block.ms bounds how long a full buffer can stall the calling
+     * thread before send fails.
+     */
     @Bean
+    @Primary
     public ProducerFactory<String, MessageDTO> producerFactory() {
+        Map<String, Object> configProps = baseProps();
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        configProps.put(ProducerConfig.RETRIES_CONFIG, Integer.MAX_VALUE);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, chatLingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, chatBatchSize);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, chatCompressionType);
+        configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, chatBufferMemory);
+        configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, chatMaxBlockMs);
+        configProps.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, chatDeliveryTimeoutMs);
+        return createFactory(configProps, "chat");
+    }
+
+    /**
+     * Producer for records that are worthless once late: leader-only acks, no
+     * retries, and a very short max.block.ms.
+     */
+    @Bean
+    public ProducerFactory<String, MessageDTO> ephemeralProducerFactory() {
+        Map<String, Object> configProps = baseProps();
+        configProps.put(ProducerConfig.ACKS_CONFIG, "1");
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, false);
+        configProps.put(ProducerConfig.RETRIES_CONFIG, 0);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, ephemeralLingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, ephemeralBatchSize);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, ephemeralCompressionType);
+        configProps.put(ProducerConfig.BUFFER_MEMORY_CONFIG, ephemeralBufferMemory);
+        configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, ephemeralMaxBlockMs);
+        configProps.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, Math.min(ephemeralDeliveryTimeoutMs - ephemeralLingerMs, 30000));
+        configProps.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, ephemeralDeliveryTimeoutMs);
+        return createFactory(configProps, "ephemeral");
+    }
+
+    @Bean
+    @Primary
+    public KafkaTemplate<String, MessageDTO> kafkaTemplate() {
+        return new KafkaTemplate<>(producerFactory());
+    }
+
+    @Bean
+    public KafkaTemplate<String, MessageDTO> ephemeralKafkaTemplate() {
+        return new KafkaTemplate<>(ephemeralProducerFactory());
+    }
+
+    private ProducerFactory<String, MessageDTO> createFactory(Map<String, Object> configProps, String profile) {
+        DefaultKafkaProducerFactory<String, MessageDTO> factory = new DefaultKafkaProducerFactory<>(configProps);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry,
+                List.of(Tag.of("profile", profile))));
+        return factory;
+    }
+
+    private Map<String, Object> baseProps() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
-        configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
 
         // Add security configuration
         if (securityProtocol != null && !securityProtocol.equals("PLAINTEXT")) {
@@ -80,12 +185,6 @@ public class KafkaProducerConfig {
                 configProps.put(SslConfigs.SSL_KEY_PASSWORD_CONFIG, keyPassword);
             }
         }
-        
-        return new DefaultKafkaProducerFactory<>(configProps);
-    }
-
-    @Bean
-    public KafkaTemplate<String, MessageDTO> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+        return configProps;
     }
 }
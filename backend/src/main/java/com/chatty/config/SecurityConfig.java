@@ -1,11 +1,14 @@
 package com.chatty.config;
 
+import com.chatty.security.BoundedPasswordEncoder;
 import com.chatty.security.JwtAuthenticationFilter;
 import com.chatty.security.JwtAuthenticationEntryPoint;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -24,6 +27,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
@@ -40,8 +44,17 @@ public class SecurityConfig {
     @Value("${websocket.allowed-origins}")
     private String[] allowedOrigins;
 
+    @Value("${auth.password-hashing.threads:0}")
+    private int passwordHashingThreads;
+
+    @Value("${auth.password-hashing.queue-capacity:64}")
+    private int passwordHashingQueueCapacity;
+
+    @Value("${auth.password-hashing.timeout:5s}")
+    private Duration passwordHashingTimeout;
+
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, PasswordEncoder passwordEncoder) throws Exception {
         http
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(AbstractHttpConfigurer::disable)
@@ -53,11 +66,16 @@ public class SecurityConfig {
                 // Public endpoints
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/ws/**").permitAll()
+                .requestMatchers("/stomp").permitAll()
                 .requestMatchers("/health").permitAll()
+                // Served on the management port only
+                .requestMatchers("/actuator/health", "/actuator/prometheus", "/actuator/latency").permitAll()
                 .requestMatchers("/avatars/**").permitAll()
+                // Attachment ids are random UUIDs, so download URLs work as capabilities (e.g. <img src>)
+                .requestMatchers(HttpMethod.GET, "/api/attachments/*/download").permitAll()
                 // All other endpoints require authentication
                 .anyRequest().authenticated())
-            .authenticationProvider(authenticationProvider())
+            .authenticationProvider(authenticationProvider(passwordEncoder))
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
@@ -78,10 +96,10 @@ public class SecurityConfig {
     }
 
     @Bean
-    public AuthenticationProvider authenticationProvider() {
+    public AuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setPasswordEncoder(passwordEncoder);
         return authProvider;
     }
 
@@ -91,7 +109,12 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        // BCrypt runs on a dedicated CPU-sized pool so login spikes can't starve request threads
+        int threads = passwordHashingThreads > 0
+                ? passwordHashingThreads
+                : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), threads,
+                passwordHashingQueueCapacity, passwordHashingTimeout, meterRegistry);
     }
 }
@@ -1,14 +1,35 @@
 package com.chatty.config;
 
+import com.chatty.websocket.DeflateHandshakeHandler;
+import com.chatty.websocket.DestinationLaneExecutor;
+import com.chatty.websocket.ExactDestinationSubscriptionRegistry;
+import com.chatty.websocket.RoomAuthorizationInterceptor;
+import com.chatty.websocket.SharedFrameStompEncoder;
+import com.chatty.websocket.SlowConsumerGuard;
 import com.chatty.websocket.StompChannelInterceptor;
+import com.chatty.websocket.SubscriptionResumeInterceptor;
+import com.chatty.websocket.TransportMetrics;
+import com.chatty.websocket.VirtualThreadChannelExecutor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -17,21 +38,71 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Value("${websocket.allowed-origins}")
     private String[] allowedOrigins;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${websocket.channel.virtual-max-concurrency:1000}")
+    private int virtualMaxConcurrency;
+
+    @Value("${websocket.broker.dispatch-lanes:0}")
+    private int brokerDispatchLanes;
+
+    @Value("${websocket.broker.lane-queue-capacity:10000}")
+    private int brokerLaneQueueCapacity;
+
+    @Value("${websocket.broker.lane-offer-timeout-ms:1000}")
+    private long brokerLaneOfferTimeoutMs;
+
+    @Value("${websocket.outbound.channel-threads:16}")
+    private int outboundChannelThreads;
+
+    @Value("${websocket.inbound.message-size-limit:65536}")
+    private int messageSizeLimit;
+
     @Autowired
     private StompChannelInterceptor stompChannelInterceptor;
 
+    @Autowired
+    private RoomAuthorizationInterceptor roomAuthorizationInterceptor;
+
+    @Autowired
+    private SubscriptionResumeInterceptor subscriptionResumeInterceptor;
+
+    @Value("${websocket.native.permessage-deflate:true}")
+    private boolean permessageDeflate;
+
+    @Autowired
+    private SlowConsumerGuard slowConsumerGuard;
+
+    @Autowired
+    private TransportMetrics transportMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         // Enable a simple in-memory message broker
         // /topic - for public broadcast messages
         // /queue - for private point-to-point messages
         registry.enableSimpleBroker("/topic", "/queue");
+
+        // Dispatch broker messages on lanes sharded by destination: ordered per room, parallel across rooms
+        int lanes = brokerDispatchLanes > 0 ? brokerDispatchLanes : Runtime.getRuntime().availableProcessors();
+        DestinationLaneExecutor laneExecutor =
+                new DestinationLaneExecutor(lanes, brokerLaneQueueCapacity, brokerLaneOfferTimeoutMs);
+        laneExecutor.setVirtualThreads(virtualThreadsEnabled);
+        laneExecutor.setMeterRegistry(meterRegistry);
+        registry.configureBrokerChannel().taskExecutor(laneExecutor);
         
         // Prefix for messages bound for @MessageMapping methods
         registry.setApplicationDestinationPrefixes("/app");
         
         // Prefix for user-specific destinations
         registry.setUserDestinationPrefix("/user");
+
+        // Deliver messages to each session in the order they were published
+        registry.setPreservePublishOrder(true);
     }
 
     @Override
@@ -40,11 +111,95 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Plain WebSocket endpoint for clients that don't need SockJS: no JSON
+        // array framing, optional permessage-deflate, and binary frames for
+        // application/octet-stream payloads
+        registry.addEndpoint("/stomp")
+                .setAllowedOriginPatterns("*")
+                .setHandshakeHandler(new DeflateHandshakeHandler(permessageDeflate));
+
+        // Handle messages from each session in the order they were received
+        registry.setPreserveReceiveOrder(true);
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        // Add JWT authentication interceptor
-        registration.interceptors(stompChannelInterceptor);
+        // JWT authentication on CONNECT, then room authorization on SEND/SUBSCRIBE,
+        // then replay of missed messages for resumed room subscriptions
+        registration.interceptors(stompChannelInterceptor, roomAuthorizationInterceptor, subscriptionResumeInterceptor);
+
+        if (virtualThreadsEnabled) {
+            registration.taskExecutor(virtualThreadExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreadsEnabled) {
+            registration.taskExecutor(virtualThreadExecutor("ws-outbound-"));
+        } else {
+            // Only encodes and queues frames; socket writes happen on the slow consumer send pool
+            registration.taskExecutor()
+                    .corePoolSize(outboundChannelThreads)
+                    .maxPoolSize(outboundChannelThreads);
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Send time and buffer limits are enforced by the slow consumer guard, whose
+        // decorator never blocks, so Spring's own session limits would never trigger.
+        // Transport metrics are the outermost decorator so they count what reaches the socket
+        // Files go through /api/attachments, never through STOMP frames
+        registration.setMessageSizeLimit(messageSizeLimit)
+                .setDecoratorFactories(slowConsumerGuard, transportMetrics);
+    }
+
+    /**
+     * Replaces the simple broker's pattern-matching subscription registry with
+     * an exact-destination index, so dispatch cost only depends on the
+     * subscribers of the target destination.
+     */
+    @Bean
+    public SmartInitializingSingleton brokerSubscriptionRegistryInstaller(
+            @Qualifier("simpleBrokerMessageHandler") AbstractBrokerMessageHandler simpleBrokerMessageHandler,
+            ExactDestinationSubscriptionRegistry registry,
+            MeterRegistry meterRegistry) {
+        return () -> {
+            ((SimpleBrokerMessageHandler) simpleBrokerMessageHandler).setSubscriptionRegistry(registry);
+            Gauge.builder("chatty.websocket.subscriptions", registry, ExactDestinationSubscriptionRegistry::getSubscriptionCount)
+                    .description("Active broker subscriptions on this node")
+                    .register(meterRegistry);
+            Gauge.builder("chatty.websocket.destinations", registry, ExactDestinationSubscriptionRegistry::getDestinationCount)
+                    .description("Destinations with at least one subscriber on this node")
+                    .register(meterRegistry);
+        };
+    }
+
+    /**
+     * Swaps in an encoder that encodes a broadcast frame once and shares it
+     * across all subscriber sessions. The STOMP handler is only registered
+     * once the endpoint mapping is built, hence after singleton creation.
+     */
+    @Bean
+    public SmartInitializingSingleton sharedFrameEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") WebSocketHandler subProtocolWebSocketHandler,
+            SharedFrameStompEncoder encoder) {
+        return () -> {
+            ((SubProtocolWebSocketHandler) subProtocolWebSocketHandler).getProtocolHandlers().stream()
+                    .filter(StompSubProtocolHandler.class::isInstance)
+                    .forEach(handler -> ((StompSubProtocolHandler) handler).setEncoder(encoder));
+        };
+    }
+
+    /**
+     * Channel executor backed by virtual threads. Handlers blocking on Mongo,
+     * Redis or Kafka then park a cheap virtual thread instead of tying up one
+     * of a handful of platform threads. Concurrency stays capped so a slow
+     * backend can't pile up unbounded in-flight work.
+     */
+    private ThreadPoolTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        return new VirtualThreadChannelExecutor(threadNamePrefix, virtualMaxConcurrency);
     }
 }
@@ -0,0 +1,236 @@
+package com.chatty.controller;
+
+import com.chatty.dto.ApiResponse;
+import com.chatty.dto.AttachmentDTO;
+import com.chatty.dto.CreateUploadRequest;
+import com.chatty.entity.Attachment;
+import com.chatty.entity.User;
+import com.chatty.service.AttachmentService;
+import com.chatty.service.ImageDerivativeService;
+import com.chatty.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Resumable uploads and ranged downloads of message attachments.
+ *
+ * Upload: POST metadata, then PUT the bytes to /content in one or more
+ * chunks with an {@code Upload-Offset} header; GET the attachment to find
+ * where to resume. Download URLs are unguessable and content never changes
+ * for an id, so responses are cacheable forever.
+ *
+ * Images can be downloaded downscaled with {@code ?size=thumb|medium|large}.
+ * Until that derivative has been generated the original is served with a
+ * revalidating Cache-Control, so caches pick up the derivative afterwards.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/attachments")
+@RequiredArgsConstructor
+public class AttachmentController {
+
+    private final AttachmentService attachmentService;
+    private final UserService userService;
+
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+    private static final String REVALIDATE_CACHE_CONTROL = "private, no-cache";
+
+    // Tomcat request attributes for zero-copy sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @PostMapping
+    public ResponseEntity<ApiResponse<AttachmentDTO>> createUpload(
+            @Valid @RequestBody CreateUploadRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        log.info("Create upload request from user: {} ({} bytes)", userDetails.getUsername(), request.getSize());
+        User user = userService.getUserEntityByUsername(userDetails.getUsername());
+        Attachment attachment = attachmentService.createUpload(request, user.getId());
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header(UPLOAD_OFFSET, "0")
+                .body(ApiResponse.success(AttachmentDTO.fromEntity(attachment)));
+    }
+
+    @PutMapping(value = "/{attachmentId}/content", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ApiResponse<AttachmentDTO>> uploadChunk(
+            @PathVariable String attachmentId,
+            @RequestHeader(UPLOAD_OFFSET) long offset,
+            HttpServletRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) throws IOException {
+        log.debug("Upload chunk for attachment {} at offset {}", attachmentId, offset);
+        User user = userService.getUserEntityByUsername(userDetails.getUsername());
+        Attachment attachment = attachmentService.appendChunk(attachmentId, user.getId(), offset, request.getInputStream());
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(attachment.getUploadedBytes()))
+                .body(ApiResponse.success(AttachmentDTO.fromEntity(attachment)));
+    }
+
+    @GetMapping("/{attachmentId}")
+    public ResponseEntity<ApiResponse<AttachmentDTO>> getAttachment(
+            @PathVariable String attachmentId,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        User user = userService.getUserEntityByUsername(userDetails.getUsername());
+        Attachment attachment = attachmentService.getOwned(attachmentId, user.getId());
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(attachment.getUploadedBytes()))
+                .body(ApiResponse.success(AttachmentDTO.fromEntity(attachment)));
+    }
+
+    /**
+     * Serves the content, honouring a single byte range. Uses Tomcat's
+     * sendfile when available and {@link FileChannel#transferTo} otherwise.
+     */
+    @GetMapping("/{attachmentId}/download")
+    public void download(
+            @PathVariable String attachmentId,
+            @RequestParam(required = false) String size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Attachment attachment = attachmentService.getCompleted(attachmentId);
+        String etag = "\"" + attachment.getContentHash() + "\"";
+        Path blob = attachmentService.blobPath(attachment);
+
+        // Unknown sizes and non-image attachments get the original
+        ImageDerivativeService.Variant variant = size != null ? ImageDerivativeService.Variant.fromKey(size) : null;
+        if (variant == null || !attachmentService.hasDerivatives(attachment)) {
+            serve(request, response, blob, attachment.getSize(), etag, attachment.getContentType(),
+                    IMMUTABLE_CACHE_CONTROL, contentDisposition(attachment));
+            return;
+        }
+
+        Optional<ImageDerivativeService.Derivative> derivative = attachmentService.findDerivative(attachment, variant);
+        if (derivative.isPresent()) {
+            serve(request, response, derivative.get().path(), derivative.get().size(),
+                    "\"" + attachment.getContentHash() + "-" + variant.key() + "\"", derivative.get().contentType(),
+                    IMMUTABLE_CACHE_CONTROL, contentDisposition(attachment));
+        } else {
+            serve(request, response, blob, attachment.getSize(), etag, attachment.getContentType(),
+                    REVALIDATE_CACHE_CONTROL, contentDisposition(attachment));
+        }
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, Path file, long length,
+                       String etag, String contentType, String cacheControl,
+                       ContentDisposition disposition) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        response.setContentType(contentType);
+        response.setContentLengthLong(end - start + 1);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition.toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Bounds of a single "bytes=" range; an empty array to serve the whole
+     * file (unsupported or multiple ranges); null if unsatisfiable.
+     */
+    private static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+            return start <= end && start < length ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static ContentDisposition contentDisposition(Attachment attachment) {
+        // Only raster images render inline; anything else (HTML, SVG, ...) is downloaded
+        boolean inline = attachment.getContentType().startsWith("image/")
+                && !attachment.getContentType().startsWith("image/svg");
+        return (inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                .filename(attachment.getFileName(), StandardCharsets.UTF_8)
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package com.chatty.controller;
 
 import com.chatty.dto.*;
 import com.chatty.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -9,6 +10,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
 @Slf4j
@@ -20,17 +22,21 @@ public class AuthController {
     private final AuthService authService;
 
     @PostMapping("/signup")
-    public ResponseEntity<ApiResponse<AuthResponse>> signup(@Valid @RequestBody SignupRequest request) {
+    public ResponseEntity<ApiResponse<AuthResponse>> signup(
+            @Valid @RequestBody SignupRequest request,
+            HttpServletRequest httpRequest) {
         log.info("Signup request received for username: {}", request.getUsername());
-        AuthResponse response = authService.signup(request);
+        AuthResponse response = authService.signup(request, httpRequest.getRemoteAddr());
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success("User registered successfully", response));
     }
 
     @PostMapping("/login")
-    public ResponseEntity<ApiResponse<AuthResponse>> login(@Valid @RequestBody LoginRequest request) {
+    public ResponseEntity<ApiResponse<AuthResponse>> login(
+            @Valid @RequestBody LoginRequest request,
+            HttpServletRequest httpRequest) {
         log.info("Login request received for username: {}", request.getUsername());
-        AuthResponse response = authService.login(request);
+        AuthResponse response = authService.login(request, httpRequest.getRemoteAddr());
         return ResponseEntity.ok(ApiResponse.success("Login successful", response));
     }
 
@@ -42,11 +48,15 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<Void>> logout(@AuthenticationPrincipal UserDetails userDetails) {
+    public ResponseEntity<ApiResponse<Void>> logout(
+            @RequestBody(required = false) RefreshTokenRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails != null) {
             log.info("Logout request received for user: {}", userDetails.getUsername());
-            // Note: In a production app, you'd get the user ID from the token or user details
-            // For simplicity, we're just logging out the current session
+        }
+        // Revoke the session the presented refresh token belongs to; other devices stay logged in
+        if (request != null && StringUtils.hasText(request.getRefreshToken())) {
+            authService.logoutSession(request.getRefreshToken());
         }
         return ResponseEntity.ok(ApiResponse.success("Logged out successfully", null));
     }
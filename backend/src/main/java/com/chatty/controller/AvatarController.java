@@ -0,0 +1,71 @@
+package com.chatty.controller;
+
+import com.chatty.service.AvatarService;
+import com.chatty.service.ImageDerivativeService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Serves avatars from memory, optionally downscaled with
+ * {@code ?size=thumb|medium|large}.
+ *
+ * Fingerprinted URLs are immutable and cached for a year. Plain and
+ * outdated URLs get the current content with {@code no-cache}, so clients
+ * revalidate and usually get a 304. Every response carries the content
+ * hash as its ETag.
+ */
+@RestController
+@RequiredArgsConstructor
+public class AvatarController {
+
+    private final AvatarService avatarService;
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePublic();
+
+    @GetMapping("/avatars/{kind:users|groups}/{fileName:.+}")
+    public ResponseEntity<Resource> getAvatar(
+            @PathVariable String kind,
+            @PathVariable String fileName,
+            @RequestParam(required = false) String size) {
+        Optional<AvatarService.ResolvedAvatar> resolved = avatarService.resolve("/avatars/" + kind + "/" + fileName);
+        if (resolved.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        AvatarService.Avatar avatar = resolved.get().avatar();
+        CacheControl cacheControl = resolved.get().current() ? IMMUTABLE : REVALIDATE;
+
+        ImageDerivativeService.Variant variant = size != null ? ImageDerivativeService.Variant.fromKey(size) : null;
+        if (variant != null) {
+            Optional<ImageDerivativeService.Derivative> derivative = avatarService.findDerivative(avatar, variant);
+            if (derivative.isPresent()) {
+                return ResponseEntity.ok()
+                        .cacheControl(cacheControl)
+                        .eTag(avatar.contentHash() + "-" + variant.key())
+                        .contentType(MediaType.parseMediaType(derivative.get().contentType()))
+                        .body(new FileSystemResource(derivative.get().path()));
+            }
+            // Not generated yet: the original, and have caches check back
+            cacheControl = REVALIDATE;
+        }
+
+        // Conditional requests are answered with 304 from the ETag
+        return ResponseEntity.ok()
+                .cacheControl(cacheControl)
+                .eTag(avatar.contentHash())
+                .contentType(avatar.contentType())
+                .body(new ByteArrayResource(avatar.content()));
+    }
+}
@@ -0,0 +1,41 @@
+package com.chatty.controller;
+
+import com.chatty.dto.ApiResponse;
+import com.chatty.dto.BootstrapDTO;
+import com.chatty.entity.User;
+import com.chatty.service.BootstrapService;
+import com.chatty.service.UserService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/bootstrap")
+@RequiredArgsConstructor
+public class BootstrapController {
+
+    private final BootstrapService bootstrapService;
+    private final UserService userService;
+
+    /**
+     * Current user, rooms, unread count, presence and recent messages in one
+     * round trip. {@code rooms} lists the rooms the client has open.
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<BootstrapDTO>> bootstrap(
+            @RequestParam(required = false, defaultValue = "") List<String> rooms,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        log.info("Bootstrap request from user: {}", userDetails.getUsername());
+        User user = userService.getUserEntityByUsername(userDetails.getUsername());
+        return ResponseEntity.ok(ApiResponse.success(bootstrapService.bootstrap(user, rooms)));
+    }
+}
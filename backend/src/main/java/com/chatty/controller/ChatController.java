@@ -4,6 +4,7 @@ import com.chatty.dto.ApiResponse;
 import com.chatty.dto.ChatRoomDTO;
 import com.chatty.dto.JoinByCodeRequest;
 import com.chatty.dto.MessageDTO;
+import com.chatty.dto.RoomMembersPageDTO;
 import com.chatty.entity.User;
 import com.chatty.service.ChatRoomService;
 import com.chatty.service.MessageService;
@@ -11,11 +12,13 @@ import com.chatty.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -29,15 +32,26 @@ public class ChatController {
     private final MessageService messageService;
     private final UserService userService;
 
+    private static final int MAX_MEMBERS_PAGE_SIZE = 200;
+
     // Chat Room Endpoints
 
     @GetMapping("/rooms")
     public ResponseEntity<ApiResponse<List<ChatRoomDTO>>> getAllRooms(
-            @AuthenticationPrincipal UserDetails userDetails) {
-        log.info("Get all rooms request from user: {}", userDetails.getUsername());
+            @AuthenticationPrincipal UserDetails userDetails,
+            WebRequest webRequest) {
+        log.debug("Get all rooms request from user: {}", userDetails.getUsername());
         User user = userService.getUserEntityByUsername(userDetails.getUsername());
-        List<ChatRoomDTO> rooms = chatRoomService.getUserAccessibleRooms(user.getId());
-        return ResponseEntity.ok(ApiResponse.success(rooms));
+        ChatRoomService.RoomList roomList = chatRoomService.getUserRoomList(user.getId());
+
+        // Pollers holding the current list get a 304 without a body
+        if (webRequest.checkNotModified(roomList.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(roomList.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(roomList.etag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(ApiResponse.success(roomList.rooms()));
     }
 
     @GetMapping("/rooms/public")
@@ -85,6 +99,23 @@ public class ChatController {
         return ResponseEntity.ok(ApiResponse.success("Left room successfully", room));
     }
 
+    @GetMapping("/rooms/{roomId}/members")
+    public ResponseEntity<ApiResponse<RoomMembersPageDTO>> getRoomMembers(
+            @PathVariable String roomId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        log.info("Get members of room {} from user: {}", roomId, userDetails.getUsername());
+        User user = userService.getUserEntityByUsername(userDetails.getUsername());
+        int pageSize = Math.max(1, Math.min(limit, MAX_MEMBERS_PAGE_SIZE));
+        List<String> memberIds = chatRoomService.getRoomMemberIds(roomId, user.getId(), after, pageSize);
+        RoomMembersPageDTO page = RoomMembersPageDTO.builder()
+                .members(userService.getUsersByIds(memberIds))
+                .nextCursor(memberIds.size() == pageSize ? memberIds.get(memberIds.size() - 1) : null)
+                .build();
+        return ResponseEntity.ok(ApiResponse.success(page));
+    }
+
     @PostMapping("/rooms/join-by-code")
     public ResponseEntity<ApiResponse<ChatRoomDTO>> joinRoomByCode(
             @Valid @RequestBody JoinByCodeRequest request,
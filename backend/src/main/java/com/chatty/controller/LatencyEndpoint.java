@@ -0,0 +1,26 @@
+package com.chatty.controller;
+
+import com.chatty.service.DeliveryLatencyTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Delivery latency percentiles on this node, by topic and hop, in ms.
+ * Served as {@code /actuator/latency} on the management port only.
+ */
+@Component
+@Endpoint(id = "latency")
+@RequiredArgsConstructor
+public class LatencyEndpoint {
+
+    private final DeliveryLatencyTracker latencyTracker;
+
+    @ReadOperation
+    public Map<String, Map<String, Map<String, Object>>> latency() {
+        return latencyTracker.snapshot();
+    }
+}
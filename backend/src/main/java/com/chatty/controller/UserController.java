@@ -2,14 +2,27 @@ package com.chatty.controller;
 
 import com.chatty.dto.ApiResponse;
 import com.chatty.dto.AuthResponse;
+import com.chatty.dto.UpdateProfileRequest;
+import com.chatty.dto.UserPageDTO;
+import com.chatty.dto.UserProfileDTO;
+import com.chatty.service.AvatarService;
+import com.chatty.service.UserSearchIndex;
 import com.chatty.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @Slf4j
@@ -19,14 +32,78 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final UserSearchIndex userSearchIndex;
+    private final AvatarService avatarService;
+    private final ObjectMapper objectMapper;
 
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_SEARCH_RESULTS = 50;
+    private static final int MAX_PROFILE_IDS = 100;
+
+    /**
+     * Every user, written to the response as they are read from Mongo. Same
+     * body as {@code ApiResponse<List<UserDTO>>}; prefer the paged directory.
+     */
     @GetMapping
-    public ResponseEntity<ApiResponse<List<AuthResponse.UserDTO>>> getAllUsers() {
+    public void getAllUsers(HttpServletResponse response) throws IOException {
         log.info("Get all users request");
-        List<AuthResponse.UserDTO> users = userService.getAllUsers();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            json.writeStartObject();
+            json.writeBooleanField("success", true);
+            json.writeArrayFieldStart("data");
+            userService.streamUsers(user -> {
+                try {
+                    json.writeObject(user);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    @GetMapping("/directory")
+    public ResponseEntity<ApiResponse<UserPageDTO>> getUserDirectory(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit) {
+        log.info("Get user directory page after: {}", after);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<AuthResponse.UserDTO> users = userService.getUserPage(after, pageSize);
+        UserPageDTO page = UserPageDTO.builder()
+                .users(users)
+                .nextCursor(users.size() == pageSize ? users.get(users.size() - 1).getId() : null)
+                .build();
+        return ResponseEntity.ok(ApiResponse.success(page));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<List<AuthResponse.UserDTO>>> searchUsers(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit) {
+        log.debug("Search users request: {}", query);
+        List<AuthResponse.UserDTO> users = userSearchIndex.search(query, Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
         return ResponseEntity.ok(ApiResponse.success(users));
     }
 
+    /**
+     * Batched profile lookup behind the client's sender dictionary. At most
+     * {@value #MAX_PROFILE_IDS} distinct ids per request; the client splits
+     * larger batches.
+     */
+    @GetMapping("/profiles")
+    public ResponseEntity<ApiResponse<List<UserProfileDTO>>> getProfiles(@RequestParam List<String> ids) {
+        log.debug("Get profiles request for {} users", ids.size());
+        List<String> userIds = ids.stream().distinct().toList();
+        if (userIds.size() > MAX_PROFILE_IDS) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error("At most " + MAX_PROFILE_IDS + " ids per request"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(userService.getProfiles(userIds)));
+    }
+
     @GetMapping("/{userId}")
     public ResponseEntity<ApiResponse<AuthResponse.UserDTO>> getUserById(@PathVariable String userId) {
         log.info("Get user by id request: {}", userId);
@@ -48,6 +125,26 @@ public class UserController {
         return ResponseEntity.ok(ApiResponse.success(users));
     }
 
+    @GetMapping("/presence")
+    public ResponseEntity<ApiResponse<List<String>>> getPresence(
+            @AuthenticationPrincipal UserDetails userDetails) {
+        log.info("Get presence snapshot request from user: {}", userDetails.getUsername());
+        List<String> online = userService.getVisiblePresence(userDetails.getUsername());
+        return ResponseEntity.ok(ApiResponse.success(online));
+    }
+
+    @PutMapping("/me")
+    public ResponseEntity<ApiResponse<AuthResponse.UserDTO>> updateCurrentUser(
+            @Valid @RequestBody UpdateProfileRequest request,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        log.info("Update profile request from user: {}", userDetails.getUsername());
+        if (request.getProfilePicture() != null && avatarService.resolve(request.getProfilePicture()).isEmpty()) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Unknown avatar: " + request.getProfilePicture()));
+        }
+        AuthResponse.UserDTO user = userService.updateProfile(userDetails.getUsername(), request);
+        return ResponseEntity.ok(ApiResponse.success("Profile updated successfully", user));
+    }
+
     @GetMapping("/me")
     public ResponseEntity<ApiResponse<AuthResponse.UserDTO>> getCurrentUser(
             @AuthenticationPrincipal UserDetails userDetails) {
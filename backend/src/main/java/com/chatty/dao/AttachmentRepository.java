@@ -0,0 +1,14 @@
+package com.chatty.dao;
+
+import com.chatty.entity.Attachment;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface AttachmentRepository extends MongoRepository<Attachment, String> {
+
+    List<Attachment> findByStatusAndCreatedAtBefore(Attachment.Status status, LocalDateTime cutoff);
+}
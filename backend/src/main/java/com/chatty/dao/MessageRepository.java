@@ -43,6 +43,9 @@ public interface MessageRepository extends MongoRepository<Message, String> {
     // Find messages after a certain timestamp
     List<Message> findByChatRoomIdAndTimestampAfterOrderByTimestampAsc(String chatRoomId, LocalDateTime timestamp);
 
+    // Room messages after a sequence number, oldest first (chatroom_seq index)
+    List<Message> findByChatRoomIdAndSeqGreaterThanOrderBySeqAsc(String chatRoomId, Long seq, Pageable pageable);
+
     // Delete messages older than a certain date
     void deleteByTimestampBefore(LocalDateTime timestamp);
 }
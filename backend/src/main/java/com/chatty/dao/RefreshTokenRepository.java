@@ -5,6 +5,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,9 +13,15 @@ public interface RefreshTokenRepository extends MongoRepository<RefreshToken, St
 
     Optional<RefreshToken> findByToken(String token);
 
+    // Active tokens for a user, one per session. Pass rotated = true: "not rotated"
+    // also matches tokens stored before the field existed
+    List<RefreshToken> findByUserIdAndRotatedNotOrderByIssuedAtAsc(String userId, boolean rotated);
+
     void deleteByUserId(String userId);
 
     void deleteByToken(String token);
 
+    void deleteByFamilyId(String familyId);
+
     void deleteByExpiryDateBefore(Instant now);
 }
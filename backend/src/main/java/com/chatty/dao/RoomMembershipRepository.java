@@ -0,0 +1,11 @@
+package com.chatty.dao;
+
+import com.chatty.entity.RoomMembership;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RoomMembershipRepository extends MongoRepository<RoomMembership, String> {
+
+    long deleteByRoomIdAndUserId(String roomId, String userId);
+}
@@ -4,6 +4,7 @@ import com.chatty.entity.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,4 +22,6 @@ public interface UserRepository extends MongoRepository<User, String> {
     List<User> findByStatus(User.UserStatus status);
 
     List<User> findByIdIn(List<String> ids);
+
+    List<User> findByUsernameIn(Collection<String> usernames);
 }
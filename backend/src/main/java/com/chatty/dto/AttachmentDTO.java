@@ -0,0 +1,36 @@
+package com.chatty.dto;
+
+import com.chatty.entity.Attachment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentDTO {
+
+    private String id;
+    private String fileName;
+    private String contentType;
+    private long size;
+
+    // Where to resume an interrupted upload
+    private long uploadedBytes;
+    private boolean complete;
+    private String url;
+
+    public static AttachmentDTO fromEntity(Attachment attachment) {
+        return AttachmentDTO.builder()
+                .id(attachment.getId())
+                .fileName(attachment.getFileName())
+                .contentType(attachment.getContentType())
+                .size(attachment.getSize())
+                .uploadedBytes(attachment.getUploadedBytes())
+                .complete(attachment.getStatus() == Attachment.Status.COMPLETE)
+                .url("/api/attachments/" + attachment.getId() + "/download")
+                .build();
+    }
+}
@@ -0,0 +1,30 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the client needs on startup, in one response.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BootstrapDTO {
+
+    private AuthResponse.UserDTO user;
+    private List<ChatRoomDTO> rooms;
+    private long unreadCount;
+    private List<String> onlineUsernames;
+
+    // roomId -> most recent page of messages, for the preloaded rooms
+    private Map<String, List<MessageDTO>> recentMessages;
+
+    // Parts that weren't ready in time and are left empty; the client fetches them separately
+    private List<String> incomplete;
+}
@@ -10,10 +10,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatRoomDTO {
@@ -27,7 +26,6 @@ public class ChatRoomDTO {
     @Size(max = 200, message = "Description cannot exceed 200 characters")
     private String description;
 
-    private List<String> memberIds;
     private int memberCount;
     
     @JsonProperty("isPublic")
@@ -38,20 +36,23 @@ public class ChatRoomDTO {
     private String profilePicture;
     private LocalDateTime createdAt;
     private LocalDateTime lastMessageAt;
+    private String lastMessageSenderName;
+    private String lastMessagePreview;
 
     public static ChatRoomDTO fromEntity(ChatRoom chatRoom) {
         return ChatRoomDTO.builder()
                 .id(chatRoom.getId())
                 .name(chatRoom.getName())
                 .description(chatRoom.getDescription())
-                .memberIds(chatRoom.getMemberIds())
-                .memberCount(chatRoom.getMemberIds() != null ? chatRoom.getMemberIds().size() : 0)
+                .memberCount(chatRoom.getMemberCount())
                 .isPublic(chatRoom.isPublic())
                 .secretCode(chatRoom.getSecretCode())
                 .createdBy(chatRoom.getCreatedBy())
                 .profilePicture(chatRoom.getProfilePicture())
                 .createdAt(chatRoom.getCreatedAt())
                 .lastMessageAt(chatRoom.getLastMessageAt())
+                .lastMessageSenderName(chatRoom.getLastMessageSenderName())
+                .lastMessagePreview(chatRoom.getLastMessagePreview())
                 .build();
     }
 
@@ -61,33 +62,34 @@ public class ChatRoomDTO {
                 .id(chatRoom.getId())
                 .name(chatRoom.getName())
                 .description(chatRoom.getDescription())
-                .memberIds(chatRoom.getMemberIds())
-                .memberCount(chatRoom.getMemberIds() != null ? chatRoom.getMemberIds().size() : 0)
+                .memberCount(chatRoom.getMemberCount())
                 .isPublic(chatRoom.isPublic())
                 .secretCode(null)
                 .createdBy(chatRoom.getCreatedBy())
                 .profilePicture(chatRoom.getProfilePicture())
                 .createdAt(chatRoom.getCreatedAt())
                 .lastMessageAt(chatRoom.getLastMessageAt())
+                .lastMessageSenderName(chatRoom.getLastMessageSenderName())
+                .lastMessagePreview(chatRoom.getLastMessagePreview())
                 .build();
     }
 
     // Version that includes secret code only if user is creator or member
-    public static ChatRoomDTO fromEntityForUser(ChatRoom chatRoom, String userId) {
-        boolean canSeeSecretCode = chatRoom.getCreatedBy().equals(userId) || 
-                                   (chatRoom.getMemberIds() != null && chatRoom.getMemberIds().contains(userId));
+    public static ChatRoomDTO fromEntityForUser(ChatRoom chatRoom, String userId, boolean isMember) {
+        boolean canSeeSecretCode = chatRoom.getCreatedBy().equals(userId) || isMember;
         return ChatRoomDTO.builder()
                 .id(chatRoom.getId())
                 .name(chatRoom.getName())
                 .description(chatRoom.getDescription())
-                .memberIds(chatRoom.getMemberIds())
-                .memberCount(chatRoom.getMemberIds() != null ? chatRoom.getMemberIds().size() : 0)
+                .memberCount(chatRoom.getMemberCount())
                 .isPublic(chatRoom.isPublic())
                 .secretCode(canSeeSecretCode ? chatRoom.getSecretCode() : null)
                 .createdBy(chatRoom.getCreatedBy())
                 .profilePicture(chatRoom.getProfilePicture())
                 .createdAt(chatRoom.getCreatedAt())
                 .lastMessageAt(chatRoom.getLastMessageAt())
+                .lastMessageSenderName(chatRoom.getLastMessageSenderName())
+                .lastMessagePreview(chatRoom.getLastMessagePreview())
                 .build();
     }
 
@@ -96,7 +98,6 @@ public class ChatRoomDTO {
                 .id(this.id)
                 .name(this.name)
                 .description(this.description)
-                .memberIds(this.memberIds)
                 .isPublic(this.isPublic)
                 .secretCode(this.secretCode)
                 .profilePicture(this.profilePicture)
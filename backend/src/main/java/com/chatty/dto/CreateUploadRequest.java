@@ -0,0 +1,23 @@
+package com.chatty.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateUploadRequest {
+
+    @NotBlank(message = "File name is required")
+    @Size(max = 255, message = "File name cannot exceed 255 characters")
+    private String fileName;
+
+    private String contentType;
+
+    @Positive(message = "Size must be positive")
+    private long size;
+}
@@ -0,0 +1,22 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A user joined or left a room. Exchanged between nodes to keep membership
+ * caches current, and published locally as an application event.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MembershipEventDTO {
+
+    private String roomId;
+    private String userId;
+    private boolean joined;
+
+    // Node that made the change, so it doesn't apply its own event twice
+    private String origin;
+}
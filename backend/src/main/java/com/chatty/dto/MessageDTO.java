@@ -1,6 +1,8 @@
 package com.chatty.dto;
 
 import com.chatty.entity.Message;
+import com.chatty.entity.MessageAttachment;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +15,7 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MessageDTO implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -22,10 +25,15 @@ public class MessageDTO implements Serializable {
     private String senderUsername;
     private String senderDisplayName;
     private String senderProfilePicture;
+    private Long senderProfileVersion;
     private String recipientId;
     private String recipientUsername;
     private String chatRoomId;
+    private Long seq;
     private String content;
+    // Sent by clients: id of one of their completed uploads
+    private String attachmentId;
+    private MessageAttachment attachment;
     private Message.MessageType messageType;
     private LocalDateTime timestamp;
     private boolean isPrivate;
@@ -38,10 +46,13 @@ public class MessageDTO implements Serializable {
                 .senderUsername(message.getSenderUsername())
                 .senderDisplayName(message.getSenderDisplayName())
                 .senderProfilePicture(message.getSenderProfilePicture())
+                .senderProfileVersion(message.getSenderProfileVersion())
                 .recipientId(message.getRecipientId())
                 .recipientUsername(message.getRecipientUsername())
                 .chatRoomId(message.getChatRoomId())
+                .seq(message.getSeq())
                 .content(message.getContent())
+                .attachment(message.getAttachment())
                 .messageType(message.getMessageType())
                 .timestamp(message.getTimestamp())
                 .isPrivate(message.isPrivate())
@@ -49,6 +60,27 @@ public class MessageDTO implements Serializable {
                 .build();
     }
 
+    /**
+     * Copy without sender and recipient profile strings; clients resolve
+     * them from senderId and senderProfileVersion via their profile cache.
+     */
+    public MessageDTO toCompact() {
+        return MessageDTO.builder()
+                .id(this.id)
+                .senderId(this.senderId)
+                .senderProfileVersion(this.senderProfileVersion)
+                .recipientId(this.recipientId)
+                .chatRoomId(this.chatRoomId)
+                .seq(this.seq)
+                .content(this.content)
+                .attachment(this.attachment)
+                .messageType(this.messageType)
+                .timestamp(this.timestamp)
+                .isPrivate(this.isPrivate)
+                .isRead(this.isRead)
+                .build();
+    }
+
     public Message toEntity() {
         return Message.builder()
                 .id(this.id)
@@ -56,10 +88,13 @@ public class MessageDTO implements Serializable {
                 .senderUsername(this.senderUsername)
                 .senderDisplayName(this.senderDisplayName)
                 .senderProfilePicture(this.senderProfilePicture)
+                .senderProfileVersion(this.senderProfileVersion)
                 .recipientId(this.recipientId)
                 .recipientUsername(this.recipientUsername)
                 .chatRoomId(this.chatRoomId)
+                .seq(this.seq)
                 .content(this.content)
+                .attachment(this.attachment)
                 .messageType(this.messageType != null ? this.messageType : Message.MessageType.TEXT)
                 .timestamp(this.timestamp != null ? this.timestamp : LocalDateTime.now())
                 .isPrivate(this.isPrivate)
@@ -0,0 +1,34 @@
+package com.chatty.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Presence changes aggregated over one broadcast window: usernames that came
+ * online and usernames that went offline.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class PresenceDiffDTO {
+
+    @Builder.Default
+    private List<String> online = new ArrayList<>();
+
+    @Builder.Default
+    private List<String> offline = new ArrayList<>();
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return online.isEmpty() && offline.isEmpty();
+    }
+}
@@ -0,0 +1,22 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a room's members. Pass {@code nextCursor} as {@code after} to
+ * get the next page; it is null on the last page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomMembersPageDTO {
+
+    private List<AuthResponse.UserDTO> members;
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single typing start/stop signal exchanged between nodes. Never persisted.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TypingEventDTO {
+
+    private String roomId;
+    private String username;
+    private boolean typing;
+}
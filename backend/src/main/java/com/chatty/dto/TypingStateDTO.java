@@ -0,0 +1,22 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Who is currently typing in a room. Sent to /topic/typing.{roomId} whenever
+ * the set changes.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TypingStateDTO {
+
+    private String roomId;
+    private List<String> users;
+}
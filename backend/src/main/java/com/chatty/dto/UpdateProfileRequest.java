@@ -0,0 +1,23 @@
+package com.chatty.dto;
+
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Profile fields a user can change; null fields are left as they are.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateProfileRequest {
+
+    @Size(max = 50, message = "Display name cannot exceed 50 characters")
+    private String displayName;
+
+    // One of the built-in avatar URLs
+    private String profilePicture;
+}
@@ -0,0 +1,22 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the user directory. Pass {@code nextCursor} as {@code after}
+ * to get the next page; it is null on the last page.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPageDTO {
+
+    private List<AuthResponse.UserDTO> users;
+    private String nextCursor;
+}
@@ -0,0 +1,22 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The public profile a chat client needs to render a sender.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProfileDTO {
+
+    private String id;
+    private String username;
+    private String displayName;
+    private String profilePicture;
+    private long profileVersion;
+}
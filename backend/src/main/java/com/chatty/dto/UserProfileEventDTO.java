@@ -0,0 +1,25 @@
+package com.chatty.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A user signed up or changed their public profile. Exchanged between nodes
+ * to keep each node's user search index current, and forwarded to clients
+ * on /topic/profiles to refresh their sender profile caches.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProfileEventDTO {
+
+    private String userId;
+    private String username;
+    private String displayName;
+    private String profilePicture;
+    private long profileVersion;
+
+    // Node that made the change, so it doesn't apply its own event twice
+    private String origin;
+}
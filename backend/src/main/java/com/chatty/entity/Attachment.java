@@ -0,0 +1,63 @@
+package com.chatty.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An uploaded file. The bytes live on disk in a content-addressed store
+ * keyed by {@link #contentHash}; identical uploads share one blob.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "attachments")
+// Quota sums and expiry of abandoned uploads
+@CompoundIndex(name = "owner_status", def = "{'ownerId': 1, 'status': 1}")
+public class Attachment {
+
+    // Random UUID rather than an ObjectId: download URLs are capabilities
+    @Id
+    private String id;
+
+    private String ownerId;
+
+    private String fileName;
+
+    private String contentType;
+
+    // Declared size; the upload completes when uploadedBytes reaches it
+    private long size;
+
+    private long uploadedBytes;
+
+    // Staged chunk files in offset order, concatenated on completion
+    @Builder.Default
+    private List<String> chunks = new ArrayList<>();
+
+    @Builder.Default
+    private Status status = Status.UPLOADING;
+
+    // SHA-256 hex of the content, set on completion
+    @Indexed(sparse = true)
+    private String contentHash;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+
+    public enum Status {
+        UPLOADING,
+        COMPLETE
+    }
+}
@@ -7,18 +7,19 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "chat_rooms")
+// Public room listings, most recently active first
+@CompoundIndex(name = "public_activity", def = "{'isPublic': 1, 'lastMessageAt': -1}")
 public class ChatRoom {
 
     @Id
@@ -29,8 +30,8 @@ public class ChatRoom {
 
     private String description;
 
-    @Builder.Default
-    private List<String> memberIds = new ArrayList<>();
+    // Members live in room_memberships; this count is kept in step with it
+    private int memberCount;
 
     @Builder.Default
     private boolean isPublic = true;
@@ -53,22 +54,8 @@ public class ChatRoom {
 
     private LocalDateTime lastMessageAt;
 
-    public void addMember(String userId) {
-        if (memberIds == null) {
-            memberIds = new ArrayList<>();
-        }
-        if (!memberIds.contains(userId)) {
-            memberIds.add(userId);
-        }
-    }
-
-    public void removeMember(String userId) {
-        if (memberIds != null) {
-            memberIds.remove(userId);
-        }
-    }
-
-    public boolean hasMember(String userId) {
-        return memberIds != null && memberIds.contains(userId);
-    }
+    // Denormalized preview of the last message, so room lists need no history reads
+    private String lastMessageSenderName;
+
+    private String lastMessagePreview;
 }
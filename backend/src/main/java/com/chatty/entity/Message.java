@@ -21,6 +21,7 @@ import java.time.LocalDateTime;
 @Document(collection = "messages")
 @CompoundIndexes({
     @CompoundIndex(name = "chatroom_timestamp", def = "{'chatRoomId': 1, 'timestamp': -1}"),
+    @CompoundIndex(name = "chatroom_seq", def = "{'chatRoomId': 1, 'seq': -1}"),
     @CompoundIndex(name = "private_chat", def = "{'senderId': 1, 'recipientId': 1, 'timestamp': -1}")
 })
 public class Message implements Serializable {
@@ -39,6 +40,9 @@ public class Message implements Serializable {
 
     private String senderProfilePicture;
 
+    // Sender's profile version when sent, so compact frames can be resolved
+    private Long senderProfileVersion;
+
     @Indexed
     private String recipientId;
 
@@ -47,8 +51,14 @@ public class Message implements Serializable {
     @Indexed
     private String chatRoomId;
 
+    // Per-room sequence number assigned at ingress (room messages only)
+    private Long seq;
+
     private String content;
 
+    // Set for IMAGE and FILE messages; the bytes are served by the attachment store
+    private MessageAttachment attachment;
+
     @Builder.Default
     private MessageType messageType = MessageType.TEXT;
 
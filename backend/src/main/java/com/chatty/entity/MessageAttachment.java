@@ -0,0 +1,26 @@
+package com.chatty.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * What a message needs to render an attachment; the bytes are downloaded
+ * separately by id.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageAttachment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+    private String fileName;
+    private String contentType;
+    private long size;
+}
@@ -26,6 +26,17 @@ public class RefreshToken {
     @Indexed
     private String userId;
 
+    // All tokens issued from one login share a family; reuse of a rotated token revokes the family
+    @Indexed
+    private String familyId;
+
+    @Builder.Default
+    private boolean rotated = false;
+
+    private Instant issuedAt;
+
+    // TTL index - MongoDB removes the document once expiryDate has passed
+    @Indexed(name = "refresh_token_ttl", expireAfterSeconds = 0)
     private Instant expiryDate;
 
     public boolean isExpired() {
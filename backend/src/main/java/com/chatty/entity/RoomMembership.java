@@ -0,0 +1,39 @@
+package com.chatty.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * One user's membership of one room. Kept out of the room document so joins
+ * and leaves touch a single small document however large the room is.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "room_memberships")
+@CompoundIndexes({
+        // Membership checks and member listing (paged by userId)
+        @CompoundIndex(name = "room_user", def = "{'roomId': 1, 'userId': 1}", unique = true),
+        // Rooms of a user
+        @CompoundIndex(name = "user_room", def = "{'userId': 1, 'roomId': 1}")
+})
+public class RoomMembership {
+
+    @Id
+    private String id;
+
+    private String roomId;
+
+    private String userId;
+
+    private LocalDateTime joinedAt;
+}
@@ -45,6 +45,10 @@ public class User {
 
     private String profilePicture;
 
+    // Bumped on every change to username, display name or profile picture
+    @Builder.Default
+    private long profileVersion = 0;
+
     public enum UserStatus {
         ONLINE,
         OFFLINE,
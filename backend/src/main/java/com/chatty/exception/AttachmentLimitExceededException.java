@@ -0,0 +1,11 @@
+package com.chatty.exception;
+
+/**
+ * An upload would exceed the per-file size limit or the user's quota.
+ */
+public class AttachmentLimitExceededException extends RuntimeException {
+
+    public AttachmentLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.chatty.exception;
+
+/**
+ * A chat message was rejected before being saved, e.g. for oversized content.
+ * Safe to correct and resend.
+ */
+public class InvalidMessageException extends RuntimeException {
+
+    public InvalidMessageException(String message) {
+        super(message);
+    }
+}
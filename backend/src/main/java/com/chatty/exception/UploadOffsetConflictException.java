@@ -0,0 +1,19 @@
+package com.chatty.exception;
+
+/**
+ * A chunk was sent for an offset other than where the upload stands. The
+ * client resumes from {@link #getCurrentOffset()}.
+ */
+public class UploadOffsetConflictException extends RuntimeException {
+
+    private final long currentOffset;
+
+    public UploadOffsetConflictException(String message, long currentOffset) {
+        super(message);
+        this.currentOffset = currentOffset;
+    }
+
+    public long getCurrentOffset() {
+        return currentOffset;
+    }
+}
@@ -3,6 +3,10 @@ package com.chatty.security;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
@@ -13,12 +17,16 @@ import javax.crypto.SecretKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class JwtTokenProvider {
 
+    private final MeterRegistry meterRegistry;
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
@@ -28,9 +36,42 @@ public class JwtTokenProvider {
     @Value("${jwt.refresh-token-expiry}")
     private long refreshTokenExpiry;
 
+    // Derived once; parsing runs on every request and every STOMP CONNECT
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    private Timer parseValid;
+    private Timer parseInvalid;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+        parseValid = parseTimer("valid");
+        parseInvalid = parseTimer("invalid");
+    }
+
+    private Timer parseTimer(String result) {
+        return Timer.builder("chatty.jwt.parse")
+                .description("Time to verify and parse a JWT")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
     private SecretKey getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSecret);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
+    }
+
+    private Claims parse(String token) {
+        long start = System.nanoTime();
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            parseValid.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return claims;
+        } catch (RuntimeException e) {
+            parseInvalid.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
     }
 
     public String generateAccessToken(Authentication authentication) {
@@ -77,19 +118,12 @@ public class JwtTokenProvider {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parse(token);
     }
 
     public boolean validateToken(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
+            parse(token);
             return true;
         } catch (MalformedJwtException ex) {
             log.error("Invalid JWT token");
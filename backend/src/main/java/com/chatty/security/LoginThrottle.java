@@ -0,0 +1,120 @@
+package com.chatty.security;
+
+import com.chatty.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Fixed-window failed-login counters in Redis, checked before any password
+ * hashing happens so throttled requests cost one round trip instead of a
+ * BCrypt run. Only failures count, so many users logging in from behind one
+ * NAT address aren't throttled, and a successful login clears the account's
+ * counter. Signups are counted per address separately. Fails open if Redis
+ * is unavailable.
+ */
+@Slf4j
+@Component
+public class LoginThrottle {
+
+    private static final String USERNAME_KEY = "auth:throttle:user:%s";
+    private static final String IP_KEY = "auth:throttle:ip:%s";
+    private static final String SIGNUP_IP_KEY = "auth:throttle:signup:ip:%s";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Counter usernameThrottled;
+    private final Counter ipThrottled;
+
+    @Value("${auth.throttle.window-seconds:60}")
+    private long windowSeconds;
+
+    @Value("${auth.throttle.max-attempts-per-username:10}")
+    private long maxAttemptsPerUsername;
+
+    @Value("${auth.throttle.max-attempts-per-ip:50}")
+    private long maxAttemptsPerIp;
+
+    public LoginThrottle(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.usernameThrottled = Counter.builder("chatty.auth.throttled").tag("scope", "username").register(meterRegistry);
+        this.ipThrottled = Counter.builder("chatty.auth.throttled").tag("scope", "ip").register(meterRegistry);
+    }
+
+    /**
+     * Rejects the login if the address or the account has used up its failed
+     * attempts for the window. Doesn't count the attempt itself.
+     */
+    public void checkLogin(String username, String clientIp) {
+        List<String> failures;
+        try {
+            failures = stringRedisTemplate.opsForValue().multiGet(
+                    List.of(String.format(IP_KEY, clientIp), usernameKey(username)));
+        } catch (Exception e) {
+            log.warn("Login throttle unavailable, allowing request: {}", e.getMessage());
+            return;
+        }
+        if (failures == null) {
+            return;
+        }
+        if (reached(failures.get(0), maxAttemptsPerIp)) {
+            ipThrottled.increment();
+            throw new RateLimitExceededException("Too many login attempts. Please try again later.", windowSeconds);
+        }
+        if (reached(failures.get(1), maxAttemptsPerUsername)) {
+            usernameThrottled.increment();
+            throw new RateLimitExceededException("Too many login attempts for this account. Please try again later.", windowSeconds);
+        }
+    }
+
+    public void recordLoginFailure(String username, String clientIp) {
+        increment(String.format(IP_KEY, clientIp));
+        increment(usernameKey(username));
+    }
+
+    /**
+     * Clears the account's failures. The address keeps its count, so one
+     * valid account can't be used to reset guessing against others.
+     */
+    public void recordLoginSuccess(String username) {
+        try {
+            stringRedisTemplate.delete(usernameKey(username));
+        } catch (Exception e) {
+            log.warn("Login throttle unavailable, failures not cleared: {}", e.getMessage());
+        }
+    }
+
+    public void checkSignup(String clientIp) {
+        Long attempts = increment(String.format(SIGNUP_IP_KEY, clientIp));
+        if (attempts != null && attempts > maxAttemptsPerIp) {
+            ipThrottled.increment();
+            throw new RateLimitExceededException("Too many requests. Please try again later.", windowSeconds);
+        }
+    }
+
+    private static String usernameKey(String username) {
+        return String.format(USERNAME_KEY, username.toLowerCase());
+    }
+
+    private static boolean reached(String failures, long limit) {
+        return failures != null && Long.parseLong(failures) >= limit;
+    }
+
+    private Long increment(String key) {
+        try {
+            Long attempts = stringRedisTemplate.opsForValue().increment(key);
+            if (attempts != null && attempts == 1) {
+                stringRedisTemplate.expire(key, Duration.ofSeconds(windowSeconds));
+            }
+            return attempts;
+        } catch (Exception e) {
+            log.warn("Login throttle unavailable, attempt not counted: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.chatty.security;
+
+import com.chatty.dao.RefreshTokenRepository;
+import com.chatty.entity.RefreshToken;
+import com.chatty.exception.AuthenticationException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * MongoDB-backed refresh token store. One document per issued token; expired
+ * documents are removed by the TTL index on {@code expiryDate}.
+ *
+ * Tokens stored before rotation families existed have neither
+ * {@code rotated} nor {@code familyId}. They count as not rotated, are
+ * revoked on their own, and join a new family on their first rotation.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "auth.refresh-token.store", havingValue = "mongo", matchIfMissing = true)
+public class MongoRefreshTokenStore implements RefreshTokenStore {
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final MongoTemplate mongoTemplate;
+    private final JwtTokenProvider jwtTokenProvider;
+
+    @Value("${auth.refresh-token.max-sessions:10}")
+    private int maxSessions;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    @Override
+    public String issue(String userId) {
+        // Evict the oldest sessions once the user is at the limit
+        List<RefreshToken> active = refreshTokenRepository.findByUserIdAndRotatedNotOrderByIssuedAtAsc(userId, true);
+        for (int i = 0; i <= active.size() - maxSessions; i++) {
+            revokeFamily(active.get(i));
+        }
+
+        return save(userId, UUID.randomUUID().toString());
+    }
+
+    @Override
+    public Rotation rotate(String token) {
+        // Atomically claim the token so two concurrent refreshes cannot both succeed
+        Query query = Query.query(Criteria.where("token").is(token).and("rotated").ne(true));
+        RefreshToken current = mongoTemplate.findAndModify(query, new Update().set("rotated", true), RefreshToken.class);
+
+        if (current == null) {
+            refreshTokenRepository.findByToken(token).ifPresent(used -> {
+                log.warn("Refresh token reuse detected for user {}, revoking session {}",
+                        used.getUserId(), used.getFamilyId());
+                revokeFamily(used);
+            });
+            throw new AuthenticationException("Invalid refresh token");
+        }
+
+        if (current.isExpired()) {
+            revokeFamily(current);
+            throw new AuthenticationException("Refresh token has expired. Please login again.");
+        }
+
+        String familyId = current.getFamilyId() != null ? current.getFamilyId() : UUID.randomUUID().toString();
+        String newToken = save(current.getUserId(), familyId);
+        return new Rotation(current.getUserId(), newToken);
+    }
+
+    @Override
+    public void revoke(String token) {
+        refreshTokenRepository.findByToken(token).ifPresent(this::revokeFamily);
+    }
+
+    @Override
+    public void revokeAll(String userId) {
+        refreshTokenRepository.deleteByUserId(userId);
+    }
+
+    /**
+     * Deletes the token's family, or just the token if it predates families:
+     * a null familyId would match every legacy token of every user.
+     */
+    private void revokeFamily(RefreshToken refreshToken) {
+        if (refreshToken.getFamilyId() != null) {
+            refreshTokenRepository.deleteByFamilyId(refreshToken.getFamilyId());
+        } else {
+            refreshTokenRepository.deleteById(refreshToken.getId());
+        }
+    }
+
+    private String save(String userId, String familyId) {
+        Instant now = Instant.now();
+        RefreshToken refreshToken = RefreshToken.builder()
+                .token(generateToken())
+                .userId(userId)
+                .familyId(familyId)
+                .issuedAt(now)
+                .expiryDate(now.plusMillis(jwtTokenProvider.getRefreshTokenExpiry()))
+                .build();
+
+        refreshTokenRepository.save(refreshToken);
+        return refreshToken.getToken();
+    }
+
+    private String generateToken() {
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
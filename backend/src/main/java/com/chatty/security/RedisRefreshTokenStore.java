@@ -0,0 +1,165 @@
+package com.chatty.security;
+
+import com.chatty.exception.AuthenticationException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Redis-backed refresh token store. Tokens and families are plain keys with
+ * native TTLs, so nothing has to be swept.
+ *
+ * <pre>
+ * auth:refresh:token:{token}       hash  userId, familyId
+ * auth:refresh:family:{familyId}   hash  userId, current
+ * auth:refresh:user:{userId}       zset  familyId scored by issue time
+ * </pre>
+ *
+ * Rotated tokens are kept until their own TTL runs out so that a replay can be
+ * recognised and the family revoked. Issuing and rotating both extend the
+ * user's family index, so it outlives every family it lists and
+ * {@link #revokeAll} still finds sessions kept alive by rotation.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "auth.refresh-token.store", havingValue = "redis")
+public class RedisRefreshTokenStore implements RefreshTokenStore {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JwtTokenProvider jwtTokenProvider;
+
+    @Value("${auth.refresh-token.max-sessions:10}")
+    private int maxSessions;
+
+    private static final String TOKEN_KEY = "auth:refresh:token:%s";
+    private static final String FAMILY_KEY = "auth:refresh:family:%s";
+    private static final String USER_FAMILIES_KEY = "auth:refresh:user:%s";
+
+    private static final long ROTATED = 1L;
+    private static final long REUSED = 0L;
+
+    // KEYS[1] family, KEYS[2] new token, KEYS[3] user's families; ARGV presented token, new token, userId, familyId, ttl millis
+    private static final RedisScript<Long> ROTATE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('HGET', KEYS[1], 'current')\n" +
+            "if not current then return -1 end\n" +
+            "if current ~= ARGV[1] then\n" +
+            "  redis.call('DEL', KEYS[1])\n" +
+            "  return 0\n" +
+            "end\n" +
+            "redis.call('HSET', KEYS[1], 'current', ARGV[2])\n" +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[5])\n" +
+            "redis.call('HSET', KEYS[2], 'userId', ARGV[3], 'familyId', ARGV[4])\n" +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[5])\n" +
+            "redis.call('PEXPIRE', KEYS[3], ARGV[5])\n" +
+            "return 1",
+            Long.class);
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    @Override
+    public String issue(String userId) {
+        String familyId = UUID.randomUUID().toString();
+        String token = generateToken();
+        Duration ttl = Duration.ofMillis(jwtTokenProvider.getRefreshTokenExpiry());
+
+        String tokenKey = String.format(TOKEN_KEY, token);
+        stringRedisTemplate.opsForHash().putAll(tokenKey, Map.of("userId", userId, "familyId", familyId));
+        stringRedisTemplate.expire(tokenKey, ttl);
+
+        String familyKey = String.format(FAMILY_KEY, familyId);
+        stringRedisTemplate.opsForHash().putAll(familyKey, Map.of("userId", userId, "current", token));
+        stringRedisTemplate.expire(familyKey, ttl);
+
+        String userKey = String.format(USER_FAMILIES_KEY, userId);
+        stringRedisTemplate.opsForZSet().add(userKey, familyId, System.currentTimeMillis());
+        stringRedisTemplate.expire(userKey, ttl);
+        evictOldestSessions(userKey);
+
+        return token;
+    }
+
+    @Override
+    public Rotation rotate(String token) {
+        Map<Object, Object> entry = stringRedisTemplate.opsForHash().entries(String.format(TOKEN_KEY, token));
+        if (entry.isEmpty()) {
+            throw new AuthenticationException("Invalid or expired refresh token");
+        }
+
+        String userId = (String) entry.get("userId");
+        String familyId = (String) entry.get("familyId");
+        String newToken = generateToken();
+
+        Long result = stringRedisTemplate.execute(
+                ROTATE_SCRIPT,
+                List.of(String.format(FAMILY_KEY, familyId), String.format(TOKEN_KEY, newToken),
+                        String.format(USER_FAMILIES_KEY, userId)),
+                token, newToken, userId, familyId, String.valueOf(jwtTokenProvider.getRefreshTokenExpiry()));
+
+        if (result == null || result != ROTATED) {
+            stringRedisTemplate.opsForZSet().remove(String.format(USER_FAMILIES_KEY, userId), familyId);
+            if (result != null && result == REUSED) {
+                log.warn("Refresh token reuse detected for user {}, revoked session {}", userId, familyId);
+            }
+            throw new AuthenticationException("Invalid or expired refresh token");
+        }
+
+        return new Rotation(userId, newToken);
+    }
+
+    @Override
+    public void revoke(String token) {
+        Map<Object, Object> entry = stringRedisTemplate.opsForHash().entries(String.format(TOKEN_KEY, token));
+        if (!entry.isEmpty()) {
+            Object familyId = entry.get("familyId");
+            stringRedisTemplate.delete(String.format(FAMILY_KEY, familyId));
+            stringRedisTemplate.opsForZSet().remove(String.format(USER_FAMILIES_KEY, entry.get("userId")), familyId);
+        }
+    }
+
+    @Override
+    public void revokeAll(String userId) {
+        String userKey = String.format(USER_FAMILIES_KEY, userId);
+        Set<String> familyIds = stringRedisTemplate.opsForZSet().range(userKey, 0, -1);
+        if (familyIds != null && !familyIds.isEmpty()) {
+            stringRedisTemplate.delete(familyIds.stream()
+                    .map(familyId -> String.format(FAMILY_KEY, familyId))
+                    .toList());
+        }
+        stringRedisTemplate.delete(userKey);
+    }
+
+    private void evictOldestSessions(String userKey) {
+        Long sessions = stringRedisTemplate.opsForZSet().zCard(userKey);
+        if (sessions == null || sessions <= maxSessions) {
+            return;
+        }
+
+        Set<String> evicted = stringRedisTemplate.opsForZSet().range(userKey, 0, sessions - maxSessions - 1);
+        if (evicted != null && !evicted.isEmpty()) {
+            stringRedisTemplate.delete(evicted.stream()
+                    .map(familyId -> String.format(FAMILY_KEY, familyId))
+                    .toList());
+            stringRedisTemplate.opsForZSet().remove(userKey, evicted.toArray());
+        }
+    }
+
+    private String generateToken() {
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
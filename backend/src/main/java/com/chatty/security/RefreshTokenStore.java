@@ -0,0 +1,36 @@
+package com.chatty.security;
+
+/**
+ * Storage for opaque refresh tokens.
+ *
+ * Every login starts a new token family (one per device/session). Refreshing
+ * rotates the token within its family; presenting a token that has already
+ * been rotated is treated as theft and revokes the whole family.
+ */
+public interface RefreshTokenStore {
+
+    /**
+     * Starts a new session for the user and returns its first refresh token.
+     */
+    String issue(String userId);
+
+    /**
+     * Exchanges a refresh token for a new one in the same family.
+     * Throws {@link com.chatty.exception.AuthenticationException} if the token
+     * is unknown, expired, revoked or has already been used.
+     */
+    Rotation rotate(String token);
+
+    /**
+     * Revokes the session the given token belongs to.
+     */
+    void revoke(String token);
+
+    /**
+     * Revokes every session of the user.
+     */
+    void revokeAll(String userId);
+
+    record Rotation(String userId, String token) {
+    }
+}
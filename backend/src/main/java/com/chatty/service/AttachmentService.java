@@ -0,0 +1,431 @@
+package com.chatty.service;
+
+import com.chatty.dao.AttachmentRepository;
+import com.chatty.dto.CreateUploadRequest;
+import com.chatty.entity.Attachment;
+import com.chatty.entity.MessageAttachment;
+import com.chatty.exception.AttachmentLimitExceededException;
+import com.chatty.exception.AttachmentNotFoundException;
+import com.chatty.exception.UploadOffsetConflictException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Chunked, resumable uploads into a local content-addressed store.
+ *
+ * An upload is created with its declared size, then appended to in chunks
+ * at explicit offsets; an interrupted chunk keeps whatever reached disk, and
+ * the client resumes from {@code uploadedBytes}. Each chunk is streamed into
+ * its own file without holding any lock, then committed by a conditional
+ * update on the expected offset, so of two requests racing for one offset
+ * exactly one is kept. Once complete the chunks are concatenated, hashed
+ * (SHA-256) and moved to {@code blobs/<2 hex>/<hash>}; identical content is
+ * stored once.
+ *
+ * An upload holds at most {@code attachments.max-chunks} chunk files, so a
+ * client sending tiny chunks can't grow the chunk list and the file count
+ * without bound; the cap is part of the conditional commit.
+ *
+ * Per-file size and per-user quota are enforced when the upload is created;
+ * the quota is reserved atomically on a per-user usage counter. Content types
+ * outside {@code attachments.allowed-content-types} are stored as
+ * {@code application/octet-stream}. The store must be a shared volume if
+ * uploads can land on different nodes. Completed images get downscaled
+ * derivatives from {@link ImageDerivativeService}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AttachmentService {
+
+    private final AttachmentRepository attachmentRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ImageDerivativeService imageDerivativeService;
+
+    @Value("${attachments.storage-dir:./data/attachments}")
+    private String storageDir;
+
+    @Value("${attachments.max-file-size:26214400}")
+    private long maxFileSize;
+
+    @Value("${attachments.user-quota:524288000}")
+    private long userQuota;
+
+    @Value("${attachments.upload-expiry-ms:86400000}")
+    private long uploadExpiryMs;
+
+    @Value("${attachments.max-chunks:1000}")
+    private int maxChunks;
+
+    @Value("${attachments.allowed-content-types:image/jpeg,image/png,image/gif,image/webp,application/pdf,text/plain}")
+    private Set<String> allowedContentTypes;
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String USAGE_COLLECTION = "attachment_usage";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private Path uploadsDir;
+    private Path blobsDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path root = Paths.get(storageDir).toAbsolutePath();
+        uploadsDir = Files.createDirectories(root.resolve("uploads"));
+        blobsDir = Files.createDirectories(root.resolve("blobs"));
+        log.info("Attachment store at {}", root);
+    }
+
+    public Attachment createUpload(CreateUploadRequest request, String ownerId) {
+        if (request.getSize() > maxFileSize) {
+            throw new AttachmentLimitExceededException("File exceeds the maximum size of " + maxFileSize + " bytes");
+        }
+        reserveQuota(ownerId, request.getSize());
+
+        try {
+            return attachmentRepository.insert(Attachment.builder()
+                    .id(UUID.randomUUID().toString())
+                    .ownerId(ownerId)
+                    .fileName(StringUtils.getFilename(StringUtils.cleanPath(request.getFileName())))
+                    .contentType(allowedContentType(request.getContentType()))
+                    .size(request.getSize())
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        } catch (RuntimeException e) {
+            releaseQuota(ownerId, request.getSize());
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the body at {@code offset}, which must equal the bytes already
+     * uploaded. Completes the upload when the declared size is reached.
+     */
+    public Attachment appendChunk(String attachmentId, String ownerId, long offset, InputStream body) throws IOException {
+        Attachment attachment = getOwned(attachmentId, ownerId);
+        if (attachment.getStatus() == Attachment.Status.COMPLETE) {
+            return attachment;
+        }
+        checkOffset(attachment, offset);
+        if (offset == attachment.getSize()) {
+            // Retry of a final chunk whose completion failed
+            return complete(attachment);
+        }
+        checkChunkCount(attachment);
+
+        // Reading the body is as slow as the client; nothing is held meanwhile
+        String chunk = attachmentId + "." + offset + "." + UUID.randomUUID() + ".chunk";
+        Path chunkPath = uploadsDir.resolve(chunk);
+        long written = 0;
+        boolean overflow = false;
+        IOException readFailure = null;
+        try (FileChannel file = FileChannel.open(chunkPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long remaining = attachment.getSize() - offset;
+            ReadableByteChannel in = Channels.newChannel(body);
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            try {
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    if (written + buffer.remaining() > remaining) {
+                        overflow = true;
+                        break;
+                    }
+                    while (buffer.hasRemaining()) {
+                        written += file.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // Keep what reached disk, even if the client went away mid-chunk
+                readFailure = e;
+            }
+        }
+
+        if (written == 0 || overflow) {
+            Files.deleteIfExists(chunkPath);
+        } else {
+            Attachment updated = commitChunk(attachmentId, offset, offset + written, chunk);
+            if (updated == null) {
+                // Another request committed this offset first, or the chunk cap was reached
+                Files.deleteIfExists(chunkPath);
+                Attachment current = get(attachmentId);
+                checkChunkCount(current);
+                throw new UploadOffsetConflictException("Upload is at offset " + current.getUploadedBytes(),
+                        current.getUploadedBytes());
+            }
+            attachment = updated;
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        if (overflow) {
+            throw new AttachmentLimitExceededException("Upload exceeds its declared size of " + attachment.getSize() + " bytes");
+        }
+
+        // Only the commit that reached the declared size completes the upload
+        if (attachment.getUploadedBytes() == attachment.getSize()) {
+            attachment = complete(attachment);
+        }
+        return attachment;
+    }
+
+    public Attachment getOwned(String attachmentId, String ownerId) {
+        Attachment attachment = get(attachmentId);
+        if (!attachment.getOwnerId().equals(ownerId)) {
+            throw new AccessDeniedException("Not the owner of this attachment");
+        }
+        return attachment;
+    }
+
+    public Attachment getCompleted(String attachmentId) {
+        Attachment attachment = get(attachmentId);
+        if (attachment.getStatus() != Attachment.Status.COMPLETE) {
+            throw new AttachmentNotFoundException("Attachment upload is not complete: " + attachmentId);
+        }
+        return attachment;
+    }
+
+    public Path blobPath(Attachment attachment) {
+        String hash = attachment.getContentHash();
+        return blobsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    public boolean hasDerivatives(Attachment attachment) {
+        return imageDerivativeService.supports(attachment.getContentType());
+    }
+
+    /**
+     * The requested size of a completed image, or empty (and scheduled) if it
+     * hasn't been generated yet.
+     */
+    public Optional<ImageDerivativeService.Derivative> findDerivative(Attachment attachment, ImageDerivativeService.Variant variant) {
+        Path blob = blobPath(attachment);
+        return imageDerivativeService.find(attachment.getContentHash(), variant, () -> Files.newInputStream(blob));
+    }
+
+    /**
+     * The reference a message stores for one of the sender's completed uploads.
+     */
+    public MessageAttachment toMessageAttachment(String attachmentId, String senderId) {
+        Attachment attachment = getOwned(attachmentId, senderId);
+        if (attachment.getStatus() != Attachment.Status.COMPLETE) {
+            throw new AttachmentNotFoundException("Attachment upload is not complete: " + attachmentId);
+        }
+        return MessageAttachment.builder()
+                .id(attachment.getId())
+                .fileName(attachment.getFileName())
+                .contentType(attachment.getContentType())
+                .size(attachment.getSize())
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${attachments.cleanup-interval-ms:3600000}")
+    public void expireAbandonedUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(uploadExpiryMs));
+        for (Attachment attachment : attachmentRepository.findByStatusAndCreatedAtBefore(Attachment.Status.UPLOADING, cutoff)) {
+            try {
+                for (String chunk : attachment.getChunks()) {
+                    Files.deleteIfExists(uploadsDir.resolve(chunk));
+                }
+                attachmentRepository.delete(attachment);
+                releaseQuota(attachment.getOwnerId(), attachment.getSize());
+            } catch (IOException e) {
+                log.warn("Failed to expire upload {}: {}", attachment.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private Attachment get(String attachmentId) {
+        return attachmentRepository.findById(attachmentId)
+                .orElseThrow(() -> new AttachmentNotFoundException("Attachment not found with id: " + attachmentId));
+    }
+
+    private static void checkOffset(Attachment attachment, long offset) {
+        if (offset != attachment.getUploadedBytes()) {
+            throw new UploadOffsetConflictException("Upload is at offset " + attachment.getUploadedBytes(),
+                    attachment.getUploadedBytes());
+        }
+    }
+
+    private void checkChunkCount(Attachment attachment) {
+        if (attachment.getChunks().size() >= maxChunks) {
+            throw new AttachmentLimitExceededException("Upload already has the maximum of " + maxChunks
+                    + " chunks; send larger chunks");
+        }
+    }
+
+    /**
+     * Records a staged chunk if the upload is still at {@code offset} and
+     * below the chunk cap; null otherwise.
+     */
+    private Attachment commitChunk(String attachmentId, long offset, long uploadedBytes, String chunk) {
+        return mongoTemplate.findAndModify(
+                Query.query(Criteria.where("id").is(attachmentId)
+                        .and("status").is(Attachment.Status.UPLOADING)
+                        .and("uploadedBytes").is(offset)
+                        .and("chunks." + (maxChunks - 1)).exists(false)),
+                new Update().set("uploadedBytes", uploadedBytes).push("chunks", chunk),
+                FindAndModifyOptions.options().returnNew(true),
+                Attachment.class);
+    }
+
+    private Attachment complete(Attachment attachment) throws IOException {
+        // Concatenate and hash in one pass, into a file of this call's own
+        Path assembled = uploadsDir.resolve(attachment.getId() + "." + UUID.randomUUID() + ".part");
+        String hash;
+        try {
+            hash = concatenate(attachment, assembled);
+        } catch (IOException e) {
+            Files.deleteIfExists(assembled);
+            throw e;
+        }
+        Path blob = blobsDir.resolve(hash.substring(0, 2)).resolve(hash);
+        if (Files.exists(blob)) {
+            // Same content already stored
+            Files.delete(assembled);
+        } else {
+            Files.createDirectories(blob.getParent());
+            Files.move(assembled, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        Attachment completed = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("id").is(attachment.getId()).and("status").is(Attachment.Status.UPLOADING)),
+                new Update()
+                        .set("status", Attachment.Status.COMPLETE)
+                        .set("contentHash", hash)
+                        .set("completedAt", LocalDateTime.now())
+                        .unset("chunks"),
+                FindAndModifyOptions.options().returnNew(true),
+                Attachment.class);
+        if (completed == null) {
+            // A concurrent retry completed it
+            return get(attachment.getId());
+        }
+        for (String chunk : attachment.getChunks()) {
+            Files.deleteIfExists(uploadsDir.resolve(chunk));
+        }
+        if (hasDerivatives(completed)) {
+            // Generated in the background; the upload response doesn't wait
+            imageDerivativeService.schedule(hash, () -> Files.newInputStream(blob));
+        }
+        return completed;
+    }
+
+    private String concatenate(Attachment attachment, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            for (String chunk : attachment.getChunks()) {
+                try (FileChannel in = FileChannel.open(uploadsDir.resolve(chunk), StandardOpenOption.READ)) {
+                    while (in.read(buffer) != -1) {
+                        buffer.flip();
+                        digest.update(buffer.duplicate());
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+            }
+            if (out.size() != attachment.getSize()) {
+                throw new IOException("Upload " + attachment.getId() + " has " + out.size()
+                        + " bytes on disk, expected " + attachment.getSize());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Reserves {@code size} bytes of the owner's quota, or throws if they
+     * don't fit. The conditional increment makes concurrent uploads by the
+     * same user unable to overshoot the quota together.
+     */
+    private void reserveQuota(String ownerId, long size) {
+        Query owner = Query.query(Criteria.where("_id").is(ownerId));
+        if (!mongoTemplate.exists(owner, USAGE_COLLECTION)) {
+            // First upload since the counter was introduced: seed it from existing uploads
+            try {
+                mongoTemplate.upsert(owner, new Update().setOnInsert("bytes", getUsage(ownerId)), USAGE_COLLECTION);
+            } catch (DuplicateKeyException e) {
+                // Seeded concurrently
+            }
+        }
+        Document reserved = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(ownerId).and("bytes").lte(userQuota - size)),
+                new Update().inc("bytes", size),
+                Document.class,
+                USAGE_COLLECTION);
+        if (reserved == null) {
+            throw new AttachmentLimitExceededException("Attachment quota of " + userQuota + " bytes exceeded");
+        }
+    }
+
+    private void releaseQuota(String ownerId, long size) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(ownerId)),
+                new Update().inc("bytes", -size), USAGE_COLLECTION);
+    }
+
+    /**
+     * The declared type without parameters if it is allowed, otherwise
+     * {@code application/octet-stream}, so a client can't have markup or
+     * scripts served back under a type a browser would render.
+     */
+    private String allowedContentType(String declared) {
+        if (!StringUtils.hasText(declared)) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+        int parameters = declared.indexOf(';');
+        String type = (parameters >= 0 ? declared.substring(0, parameters) : declared).trim().toLowerCase(Locale.ROOT);
+        return allowedContentTypes.contains(type) ? type : DEFAULT_CONTENT_TYPE;
+    }
+
+    private long getUsage(String ownerId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ownerId").is(ownerId)),
+                Aggregation.group().sum("size").as("total"));
+        Document result = mongoTemplate.aggregate(aggregation, Attachment.class, Document.class).getUniqueMappedResult();
+        return result != null ? ((Number) result.get("total")).longValue() : 0;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,15 +1,15 @@
 package com.chatty.service;
 
-import com.chatty.dao.RefreshTokenRepository;
 import com.chatty.dao.UserRepository;
 import com.chatty.dto.AuthResponse;
 import com.chatty.dto.LoginRequest;
 import com.chatty.dto.SignupRequest;
-import com.chatty.entity.RefreshToken;
 import com.chatty.entity.User;
 import com.chatty.exception.AuthenticationException;
 import com.chatty.exception.UserAlreadyExistsException;
 import com.chatty.security.JwtTokenProvider;
+import com.chatty.security.LoginThrottle;
+import com.chatty.security.RefreshTokenStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -19,9 +19,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Slf4j
 @Service
@@ -29,16 +27,20 @@ import java.util.UUID;
 public class AuthService {
 
     private final UserRepository userRepository;
-    private final RefreshTokenRepository refreshTokenRepository;
+    private final RefreshTokenStore refreshTokenStore;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
     private final AuthenticationManager authenticationManager;
     private final AvatarService avatarService;
+    private final LoginThrottle loginThrottle;
+    private final UserSearchIndex userSearchIndex;
 
     @Transactional
-    public AuthResponse signup(SignupRequest request) {
+    public AuthResponse signup(SignupRequest request, String clientIp) {
         log.info("Processing signup request for username: {}", request.getUsername());
 
+        loginThrottle.checkSignup(clientIp);
+
         // Check if username already exists
         if (userRepository.existsByUsername(request.getUsername())) {
             throw new UserAlreadyExistsException("Username is already taken");
@@ -62,18 +64,22 @@ public class AuthService {
 
         User savedUser = userRepository.save(user);
         log.info("User created successfully with id: {}", savedUser.getId());
+        userSearchIndex.onProfileChanged(savedUser);
 
         // Generate tokens
         String accessToken = jwtTokenProvider.generateAccessToken(savedUser.getUsername());
-        String refreshToken = createRefreshToken(savedUser.getId());
+        String refreshToken = refreshTokenStore.issue(savedUser.getId());
 
         return buildAuthResponse(savedUser, accessToken, refreshToken);
     }
 
     @Transactional
-    public AuthResponse login(LoginRequest request) {
+    public AuthResponse login(LoginRequest request, String clientIp) {
         log.info("Processing login request for username: {}", request.getUsername());
 
+        // Reject throttled attempts before spending any time on BCrypt
+        loginThrottle.checkLogin(request.getUsername(), clientIp);
+
         try {
             Authentication authentication = authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
@@ -82,23 +88,22 @@ public class AuthService {
                     )
             );
 
+            // Online status is tracked by the presence engine when the WebSocket connects
             User user = userRepository.findByUsername(request.getUsername())
                     .orElseThrow(() -> new AuthenticationException("User not found"));
 
-            // Update user status to online
-            user.setStatus(User.UserStatus.ONLINE);
-            user.setLastSeen(LocalDateTime.now());
-            userRepository.save(user);
+            loginThrottle.recordLoginSuccess(request.getUsername());
 
             // Generate tokens
             String accessToken = jwtTokenProvider.generateAccessToken(authentication);
-            String refreshToken = createRefreshToken(user.getId());
+            String refreshToken = refreshTokenStore.issue(user.getId());
 
             log.info("User logged in successfully: {}", user.getUsername());
             return buildAuthResponse(user, accessToken, refreshToken);
 
         } catch (org.springframework.security.core.AuthenticationException e) {
             log.error("Authentication failed for user: {}", request.getUsername());
+            loginThrottle.recordLoginFailure(request.getUsername(), clientIp);
             throw new AuthenticationException("Invalid username or password");
         }
     }
@@ -107,23 +112,14 @@ public class AuthService {
     public AuthResponse refreshToken(String refreshTokenStr) {
         log.info("Processing refresh token request");
 
-        RefreshToken refreshToken = refreshTokenRepository.findByToken(refreshTokenStr)
-                .orElseThrow(() -> new AuthenticationException("Invalid refresh token"));
+        // Rotate within the token family; throws if the token is invalid, expired or replayed
+        RefreshTokenStore.Rotation rotation = refreshTokenStore.rotate(refreshTokenStr);
 
-        if (refreshToken.isExpired()) {
-            refreshTokenRepository.delete(refreshToken);
-            throw new AuthenticationException("Refresh token has expired. Please login again.");
-        }
-
-        User user = userRepository.findById(refreshToken.getUserId())
+        User user = userRepository.findById(rotation.userId())
                 .orElseThrow(() -> new AuthenticationException("User not found"));
 
-        // Generate new tokens
         String newAccessToken = jwtTokenProvider.generateAccessToken(user.getUsername());
-        String newRefreshToken = createRefreshToken(user.getId());
-
-        // Delete old refresh token
-        refreshTokenRepository.delete(refreshToken);
+        String newRefreshToken = rotation.token();
 
         log.info("Token refreshed successfully for user: {}", user.getUsername());
         return buildAuthResponse(user, newAccessToken, newRefreshToken);
@@ -139,23 +135,16 @@ public class AuthService {
             userRepository.save(user);
         });
 
-        // Delete all refresh tokens for this user
-        refreshTokenRepository.deleteByUserId(userId);
+        // Revoke every session of this user
+        refreshTokenStore.revokeAll(userId);
         log.info("User logged out successfully");
     }
 
-    private String createRefreshToken(String userId) {
-        // Delete existing refresh tokens for this user
-        refreshTokenRepository.deleteByUserId(userId);
-
-        RefreshToken refreshToken = RefreshToken.builder()
-                .token(UUID.randomUUID().toString())
-                .userId(userId)
-                .expiryDate(Instant.now().plusMillis(jwtTokenProvider.getRefreshTokenExpiry()))
-                .build();
+    public void logoutSession(String refreshTokenStr) {
+        log.info("Processing logout for a single session");
 
-        refreshTokenRepository.save(refreshToken);
-        return refreshToken.getToken();
+        // Revoke only the session (token family) this refresh token belongs to
+        refreshTokenStore.revoke(refreshTokenStr);
     }
 
     private AuthResponse buildAuthResponse(User user, String accessToken, String refreshToken) {
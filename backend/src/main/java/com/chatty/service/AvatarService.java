@@ -1,29 +1,68 @@
 package com.chatty.service;
 
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The built-in user and group avatars.
+ *
+ * Avatars are read into memory at startup and handed out under fingerprinted
+ * URLs ({@code /avatars/users/cat.3f2a9c01b4.png}), which never change
+ * content and can be cached forever. The plain URLs stored by earlier
+ * versions, and fingerprints from a previous deployment, still resolve to
+ * the current bytes.
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class AvatarService {
 
+    private final ImageDerivativeService imageDerivativeService;
+
     private static final String USER_AVATARS_PATH = "classpath:static/avatars/users/*";
     private static final String GROUP_AVATARS_PATH = "classpath:static/avatars/groups/*";
     private static final String AVATAR_URL_PREFIX = "/avatars";
     private static final String[] SUPPORTED_EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".webp"};
+    private static final int FINGERPRINT_LENGTH = 10;
 
     private final List<String> userAvatars = new ArrayList<>();
     private final List<String> groupAvatars = new ArrayList<>();
     private final Random random = new Random();
 
+    // Plain URL (/avatars/users/cat.png) -> avatar
+    private final Map<String, Avatar> avatarsByUrl = new ConcurrentHashMap<>();
+
+    /**
+     * An avatar's bytes and the fingerprinted URL it is served under.
+     */
+    public record Avatar(byte[] content, String contentHash, MediaType contentType, String url) {
+    }
+
+    /**
+     * The avatar a request path resolves to; {@code current} is false for
+     * plain or outdated fingerprinted URLs, whose content may change.
+     */
+    public record ResolvedAvatar(Avatar avatar, boolean current) {
+    }
+
     @PostConstruct
     public void init() {
         loadAvatars();
@@ -32,6 +71,7 @@ public class AvatarService {
     private void loadAvatars() {
         userAvatars.clear();
         groupAvatars.clear();
+        avatarsByUrl.clear();
 
         PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
 
@@ -41,7 +81,7 @@ public class AvatarService {
             for (Resource resource : userResources) {
                 String filename = resource.getFilename();
                 if (filename != null && isSupportedImage(filename)) {
-                    userAvatars.add(AVATAR_URL_PREFIX + "/users/" + filename);
+                    userAvatars.add(register(AVATAR_URL_PREFIX + "/users/" + filename, resource));
                 }
             }
             log.info("Loaded {} user avatars", userAvatars.size());
@@ -55,7 +95,7 @@ public class AvatarService {
             for (Resource resource : groupResources) {
                 String filename = resource.getFilename();
                 if (filename != null && isSupportedImage(filename)) {
-                    groupAvatars.add(AVATAR_URL_PREFIX + "/groups/" + filename);
+                    groupAvatars.add(register(AVATAR_URL_PREFIX + "/groups/" + filename, resource));
                 }
             }
             log.info("Loaded {} group avatars", groupAvatars.size());
@@ -64,6 +104,56 @@ public class AvatarService {
         }
     }
 
+    /**
+     * Reads the avatar into memory and returns its fingerprinted URL.
+     */
+    private String register(String plainUrl, Resource resource) throws IOException {
+        byte[] content;
+        try (InputStream in = resource.getInputStream()) {
+            content = in.readAllBytes();
+        }
+        String contentHash = DigestUtils.md5DigestAsHex(content);
+        String extension = StringUtils.getFilenameExtension(plainUrl);
+        String url = StringUtils.stripFilenameExtension(plainUrl)
+                + "." + contentHash.substring(0, FINGERPRINT_LENGTH) + "." + extension;
+        MediaType contentType = MediaTypeFactory.getMediaType(plainUrl).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        avatarsByUrl.put(plainUrl, new Avatar(content, contentHash, contentType, url));
+        // Pre-generate size variants in the background
+        imageDerivativeService.schedule(contentHash, () -> new ByteArrayInputStream(content));
+        return url;
+    }
+
+    /**
+     * Resolves a plain or fingerprinted avatar URL.
+     */
+    public Optional<ResolvedAvatar> resolve(String url) {
+        Avatar avatar = avatarsByUrl.get(url);
+        if (avatar != null) {
+            return Optional.of(new ResolvedAvatar(avatar, false));
+        }
+
+        // name.<fingerprint>.ext -> name.ext
+        String extension = StringUtils.getFilenameExtension(url);
+        String base = StringUtils.stripFilenameExtension(url);
+        int dot = base.lastIndexOf('.');
+        if (extension == null || dot <= base.lastIndexOf('/')) {
+            return Optional.empty();
+        }
+        avatar = avatarsByUrl.get(base.substring(0, dot) + "." + extension);
+        if (avatar == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResolvedAvatar(avatar, avatar.url().equals(url)));
+    }
+
+    /**
+     * A downscaled copy of the avatar, or empty if it hasn't been generated yet.
+     */
+    public Optional<ImageDerivativeService.Derivative> findDerivative(Avatar avatar, ImageDerivativeService.Variant variant) {
+        return imageDerivativeService.find(avatar.contentHash(), variant, () -> new ByteArrayInputStream(avatar.content()));
+    }
+
     private boolean isSupportedImage(String filename) {
         String lowerFilename = filename.toLowerCase();
         for (String ext : SUPPORTED_EXTENSIONS) {
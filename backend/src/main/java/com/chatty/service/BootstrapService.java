@@ -0,0 +1,164 @@
+package com.chatty.service;
+
+import com.chatty.dto.BootstrapDTO;
+import com.chatty.dto.ChatRoomDTO;
+import com.chatty.dto.MessageDTO;
+import com.chatty.entity.User;
+import com.chatty.exception.ServiceBusyException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Builds the client's startup payload.
+ *
+ * The caller is authenticated and looked up once; the room list, unread
+ * count, presence snapshot and the recent messages of up to
+ * {@code bootstrap.preload-rooms} rooms are then fetched concurrently on a
+ * bounded pool. When the pool is saturated the request thread does the work
+ * itself rather than queueing without bound.
+ *
+ * Parts not ready within {@code bootstrap.timeout-ms} are left out and
+ * named in {@link BootstrapDTO#getIncomplete()}. Without the room list there
+ * is nothing useful to return, so that answers 503 with a Retry-After.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BootstrapService {
+
+    private final ChatRoomService chatRoomService;
+    private final MessageService messageService;
+    private final UserService userService;
+
+    @Value("${bootstrap.preload-rooms:5}")
+    private int preloadRooms;
+
+    @Value("${bootstrap.page-size:50}")
+    private int pageSize;
+
+    @Value("${bootstrap.executor.threads:16}")
+    private int threads;
+
+    @Value("${bootstrap.executor.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${bootstrap.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("bootstrap-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @param roomIds rooms the client has open, preloaded first; may be empty
+     */
+    public BootstrapDTO bootstrap(User user, List<String> roomIds) {
+        String userId = user.getId();
+
+        CompletableFuture<List<ChatRoomDTO>> rooms = supply(() -> chatRoomService.getUserAccessibleRooms(userId));
+        CompletableFuture<Long> unreadCount = supply(() -> messageService.getUnreadCount(userId));
+        CompletableFuture<List<String>> online = supply(() -> userService.getVisiblePresence(user.getUsername()));
+
+        // Preload the requested rooms the user can see, then the most active ones
+        CompletableFuture<Map<String, List<MessageDTO>>> recentMessages = rooms.thenCompose(accessible -> {
+            List<String> accessibleIds = accessible.stream().map(ChatRoomDTO::getId).toList();
+            List<String> preload = Stream.concat(roomIds.stream().filter(accessibleIds::contains), accessibleIds.stream())
+                    .distinct()
+                    .limit(preloadRooms)
+                    .toList();
+
+            Map<String, CompletableFuture<List<MessageDTO>>> pages = new LinkedHashMap<>();
+            preload.forEach(roomId -> pages.put(roomId, supply(() -> messageService.getRoomMessages(roomId, 0, pageSize))));
+            return CompletableFuture.allOf(pages.values().toArray(CompletableFuture[]::new))
+                    .thenApply(done -> {
+                        Map<String, List<MessageDTO>> result = new LinkedHashMap<>();
+                        pages.forEach((roomId, page) -> result.put(roomId, page.join()));
+                        return result;
+                    });
+        });
+
+        try {
+            CompletableFuture.allOf(rooms, unreadCount, online, recentMessages)
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .join();
+        } catch (CompletionException e) {
+            // Timed out or a part failed; whatever finished is still used
+            log.warn("Bootstrap for user {} incomplete: {}", userId, e.getCause().toString());
+        }
+
+        if (!rooms.isDone()) {
+            throw new ServiceBusyException("Bootstrap timed out", RETRY_AFTER_SECONDS);
+        }
+        List<ChatRoomDTO> roomList = join(rooms);
+
+        List<String> incomplete = new ArrayList<>();
+        Long unread = completedOrNull(unreadCount, "unreadCount", incomplete);
+        return BootstrapDTO.builder()
+                .user(userService.toUserDTO(user))
+                .rooms(roomList)
+                .unreadCount(unread != null ? unread : 0)
+                .onlineUsernames(completedOrNull(online, "onlineUsernames", incomplete))
+                .recentMessages(completedOrNull(recentMessages, "recentMessages", incomplete))
+                .incomplete(incomplete.isEmpty() ? null : incomplete)
+                .build();
+    }
+
+    private static <T> T completedOrNull(CompletableFuture<T> part, String name, List<String> incomplete) {
+        if (part.isDone() && !part.isCompletedExceptionally()) {
+            return part.join();
+        }
+        incomplete.add(name);
+        return null;
+    }
+
+    /**
+     * The value of a completed part, rethrowing its failure as it was thrown
+     * so the usual error mapping applies.
+     */
+    private static <T> T join(CompletableFuture<T> part) {
+        try {
+            return part.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, executor);
+    }
+}
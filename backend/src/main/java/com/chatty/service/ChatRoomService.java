@@ -2,29 +2,110 @@ package com.chatty.service;
 
 import com.chatty.dao.ChatRoomRepository;
 import com.chatty.dto.ChatRoomDTO;
+import com.chatty.dto.MembershipEventDTO;
 import com.chatty.entity.ChatRoom;
 import com.chatty.exception.ChatRoomNotFoundException;
 import com.chatty.exception.DuplicateResourceException;
+import com.chatty.utilities.MessageUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
 
 import jakarta.annotation.PostConstruct;
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * Chat rooms and the per-user room list.
+ *
+ * Room lists are cached per user, least recently used first out, along with
+ * an ETag over their content. A user's list is dropped when their
+ * memberships change, and every list holding a room is dropped when the
+ * room's member count changes.
+ *
+ * Each room carries a denormalized preview of its last message. Updates are
+ * coalesced per room and written in one bulk operation per flush interval.
+ * Previews don't invalidate cached lists: the flushed ones are kept per room,
+ * shared with other nodes in one Redis pub/sub message per flush, and laid
+ * over a cached list when it is read.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class ChatRoomService {
+public class ChatRoomService implements MessageListener {
 
     private final ChatRoomRepository chatRoomRepository;
+    private final RoomMembershipService membershipService;
     private final AvatarService avatarService;
+    private final MongoTemplate mongoTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final ObjectMapper objectMapper;
+
+    @Value("${rooms.list-cache.max-users:10000}")
+    private int maxCachedLists;
+
+    @Value("${rooms.list-cache.ttl-ms:300000}")
+    private long listCacheTtlMs;
+
+    @Value("${rooms.channel:rooms:events}")
+    private String roomsChannel;
+
+    @Value("${rooms.last-message.preview-length:100}")
+    private int previewLength;
+
+    // Fields a room list needs; everything else stays in Mongo
+    private static final String[] ROOM_LIST_FIELDS = {
+            "name", "description", "memberCount", "isPublic", "secretCode",
+            "createdBy", "profilePicture", "createdAt", "lastMessageAt",
+            "lastMessageSenderName", "lastMessagePreview"
+    };
+
+    // userId -> cached room list, in access order
+    private final Map<String, RoomList> roomListsByUser = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RoomList> eldest) {
+                    return size() > maxCachedLists;
+                }
+            });
+
+    // roomId -> newest last message not yet written
+    private final Map<String, LastMessage> pendingLastMessages = new ConcurrentHashMap<>();
+
+    // roomId -> newest written last message, until every cached list is newer
+    private final Map<String, FlushedPreview> flushedPreviews = new ConcurrentHashMap<>();
     
     private static final String SECRET_CODE_CHARS = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789";
     private static final int SECRET_CODE_LENGTH = 8;
@@ -42,51 +123,157 @@ public class ChatRoomService {
         return code.toString();
     }
 
+    // Id of the General room, open to everyone without a membership
+    private volatile String generalRoomId;
+
     @PostConstruct
     public void init() {
         // Create default "General" chat room if it doesn't exist
-        if (!chatRoomRepository.existsByName("General")) {
-            ChatRoom generalRoom = ChatRoom.builder()
+        ChatRoom generalRoom = chatRoomRepository.findByName("General").orElseGet(() -> {
+            ChatRoom room = chatRoomRepository.save(ChatRoom.builder()
                     .name("General")
                     .description("General chat room for everyone")
                     .isPublic(true)
                     .createdBy("system")
                     .createdAt(LocalDateTime.now())
-                    .build();
-            chatRoomRepository.save(generalRoom);
+                    .build());
             log.info("Created default 'General' chat room");
-        }
+            return room;
+        });
+        generalRoomId = generalRoom.getId();
+
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(roomsChannel));
     }
 
     public List<ChatRoomDTO> getAllPublicRooms() {
-        return chatRoomRepository.findByIsPublicTrue().stream()
+        Query query = Query.query(Criteria.where("isPublic").is(true))
+                .with(Sort.by(Sort.Direction.DESC, "lastMessageAt"));
+        query.fields().include(ROOM_LIST_FIELDS).exclude("secretCode");
+        return mongoTemplate.find(query, ChatRoom.class).stream()
                 .map(ChatRoomDTO::fromEntityWithoutSecretCode)
                 .collect(Collectors.toList());
     }
 
-    private static final String GENERAL_ROOM_NAME = "General";
-
     public List<ChatRoomDTO> getUserAccessibleRooms(String userId) {
-        // Get rooms where user is a member
-        List<ChatRoom> memberRooms = chatRoomRepository.findByMemberId(userId);
-        
-        // Always include the General room for all users
-        Optional<ChatRoom> generalRoom = chatRoomRepository.findByName(GENERAL_ROOM_NAME);
-        
-        List<ChatRoom> accessibleRooms = new ArrayList<>(memberRooms);
-        
-        // Add General room if not already in the list
-        if (generalRoom.isPresent()) {
-            boolean hasGeneralRoom = memberRooms.stream()
-                    .anyMatch(room -> GENERAL_ROOM_NAME.equals(room.getName()));
-            if (!hasGeneralRoom) {
-                accessibleRooms.add(0, generalRoom.get()); // Add at the beginning
+        return getUserRoomList(userId).rooms();
+    }
+
+    /**
+     * The rooms the user can see - General plus their memberships - with an
+     * ETag for conditional requests. Served from the per-user cache, with
+     * previews written since it was loaded laid over it.
+     */
+    public RoomList getUserRoomList(String userId) {
+        RoomList cached = roomListsByUser.get(userId);
+        long now = System.currentTimeMillis();
+        if (cached == null || now - cached.loadedAt() >= listCacheTtlMs) {
+            cached = loadRoomList(userId, now);
+            roomListsByUser.put(userId, cached);
+        }
+        return withFlushedPreviews(cached);
+    }
+
+    private RoomList withFlushedPreviews(RoomList list) {
+        if (flushedPreviews.isEmpty()) {
+            return list;
+        }
+        List<ChatRoomDTO> rooms = null;
+        StringBuilder version = null;
+        for (int i = 0; i < list.rooms().size(); i++) {
+            ChatRoomDTO room = list.rooms().get(i);
+            FlushedPreview flushed = flushedPreviews.get(room.getId());
+            if (flushed == null || !isNewer(flushed.lastMessage(), room.getLastMessageAt())) {
+                continue;
             }
+            if (rooms == null) {
+                rooms = new ArrayList<>(list.rooms());
+                version = new StringBuilder(list.etag());
+            }
+            LastMessage lastMessage = flushed.lastMessage();
+            rooms.set(i, room.toBuilder()
+                    .lastMessageAt(lastMessage.timestamp())
+                    .lastMessageSenderName(lastMessage.senderName())
+                    .lastMessagePreview(lastMessage.preview())
+                    .build());
+            version.append(room.getId()).append(lastMessage.messageId());
         }
-        
-        return accessibleRooms.stream()
-                .map(room -> ChatRoomDTO.fromEntityForUser(room, userId))
-                .collect(Collectors.toList());
+        if (rooms == null) {
+            return list;
+        }
+
+        // Most recently active first, General always first
+        rooms.sort(Comparator.comparing((ChatRoomDTO room) -> !room.getId().equals(generalRoomId))
+                .thenComparing(ChatRoomDTO::getLastMessageAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        String etag = "\"" + DigestUtils.md5DigestAsHex(version.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+        return new RoomList(List.copyOf(rooms), etag, list.roomIds(), list.loadedAt());
+    }
+
+    private static boolean isNewer(LastMessage lastMessage, LocalDateTime lastMessageAt) {
+        return lastMessageAt == null || lastMessage.timestamp().isAfter(lastMessageAt);
+    }
+
+    private RoomList loadRoomList(String userId, long now) {
+        Set<String> memberRoomIds = new HashSet<>(membershipService.getRoomIds(userId));
+        Set<String> roomIds = new HashSet<>(memberRoomIds);
+        roomIds.add(generalRoomId);
+
+        // Most recently active first
+        Query query = Query.query(Criteria.where("id").in(roomIds))
+                .with(Sort.by(Sort.Direction.DESC, "lastMessageAt"));
+        query.fields().include(ROOM_LIST_FIELDS);
+
+        List<ChatRoomDTO> rooms = new ArrayList<>();
+        for (ChatRoom room : mongoTemplate.find(query, ChatRoom.class)) {
+            ChatRoomDTO dto = ChatRoomDTO.fromEntityForUser(room, userId, memberRoomIds.contains(room.getId()));
+            // General always comes first
+            if (room.getId().equals(generalRoomId)) {
+                rooms.add(0, dto);
+            } else {
+                rooms.add(dto);
+            }
+        }
+        return new RoomList(List.copyOf(rooms), etagOf(rooms), roomIds, now);
+    }
+
+    private String etagOf(List<ChatRoomDTO> rooms) {
+        try {
+            return "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(rooms)) + "\"";
+        } catch (Exception e) {
+            return "\"" + Integer.toHexString(rooms.hashCode()) + "\"";
+        }
+    }
+
+    @EventListener
+    public void onMembershipChanged(MembershipEventDTO event) {
+        roomListsByUser.remove(event.getUserId());
+        // The room's member count changed for everyone listing it
+        evictRoomLists(event.getRoomId());
+    }
+
+    /**
+     * Previews another node has written.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Map<String, LastMessage> previews = objectMapper.readValue(message.getBody(),
+                    objectMapper.getTypeFactory().constructMapType(Map.class, String.class, LastMessage.class));
+            previews.forEach(this::recordFlushedPreview);
+        } catch (Exception e) {
+            log.warn("Failed to read room previews: {}", e.getMessage());
+        }
+    }
+
+    private void evictRoomLists(String roomId) {
+        synchronized (roomListsByUser) {
+            roomListsByUser.values().removeIf(list -> list.roomIds().contains(roomId));
+        }
+    }
+
+    private void recordFlushedPreview(String roomId, LastMessage lastMessage) {
+        FlushedPreview flushed = new FlushedPreview(lastMessage, System.currentTimeMillis());
+        flushedPreviews.merge(roomId, flushed, (current, latest) ->
+                isNewer(latest.lastMessage(), current.lastMessage().timestamp()) ? latest : current);
     }
 
     public ChatRoomDTO getRoomById(String roomId) {
@@ -127,9 +314,11 @@ public class ChatRoomService {
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        room.addMember(creatorId);
         ChatRoom savedRoom = chatRoomRepository.save(room);
-        
+        if (membershipService.join(savedRoom.getId(), creatorId)) {
+            savedRoom = adjustMemberCount(savedRoom.getId(), 1);
+        }
+
         log.info("Chat room '{}' created by user {} (public: {}, secretCode: {})", 
                 savedRoom.getName(), creatorId, savedRoom.isPublic(), 
                 secretCode != null ? "generated" : "none");
@@ -141,11 +330,11 @@ public class ChatRoomService {
         ChatRoom room = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new ChatRoomNotFoundException("Chat room not found with id: " + roomId));
 
-        room.addMember(userId);
-        ChatRoom savedRoom = chatRoomRepository.save(room);
-        
-        log.info("User {} joined room {}", userId, room.getName());
-        return ChatRoomDTO.fromEntity(savedRoom);
+        if (membershipService.join(roomId, userId)) {
+            room = adjustMemberCount(roomId, 1);
+            log.info("User {} joined room {}", userId, room.getName());
+        }
+        return ChatRoomDTO.fromEntity(room);
     }
 
     @Transactional
@@ -153,11 +342,11 @@ public class ChatRoomService {
         ChatRoom room = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new ChatRoomNotFoundException("Chat room not found with id: " + roomId));
 
-        room.removeMember(userId);
-        ChatRoom savedRoom = chatRoomRepository.save(room);
-        
-        log.info("User {} left room {}", userId, room.getName());
-        return ChatRoomDTO.fromEntity(savedRoom);
+        if (membershipService.leave(roomId, userId)) {
+            room = adjustMemberCount(roomId, -1);
+            log.info("User {} left room {}", userId, room.getName());
+        }
+        return ChatRoomDTO.fromEntity(room);
     }
 
     @Transactional
@@ -165,14 +354,12 @@ public class ChatRoomService {
         ChatRoom room = chatRoomRepository.findBySecretCode(secretCode.toUpperCase())
                 .orElseThrow(() -> new ChatRoomNotFoundException("Invalid secret code. No room found."));
 
-        if (room.hasMember(userId)) {
+        if (!membershipService.join(room.getId(), userId)) {
             log.info("User {} is already a member of room {}", userId, room.getName());
             return ChatRoomDTO.fromEntity(room);
         }
 
-        room.addMember(userId);
-        ChatRoom savedRoom = chatRoomRepository.save(room);
-        
+        ChatRoom savedRoom = adjustMemberCount(room.getId(), 1);
         log.info("User {} joined private room {} using secret code", userId, room.getName());
         return ChatRoomDTO.fromEntity(savedRoom);
     }
@@ -180,16 +367,78 @@ public class ChatRoomService {
     public ChatRoomDTO getRoomByIdForUser(String roomId, String userId) {
         ChatRoom room = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new ChatRoomNotFoundException("Chat room not found with id: " + roomId));
-        return ChatRoomDTO.fromEntityForUser(room, userId);
+        return ChatRoomDTO.fromEntityForUser(room, userId, membershipService.isMember(roomId, userId));
     }
 
-    @Transactional
-    public void updateLastMessage(String roomId, String messageId, LocalDateTime timestamp) {
-        chatRoomRepository.findById(roomId).ifPresent(room -> {
-            room.setLastMessageId(messageId);
-            room.setLastMessageAt(timestamp);
-            chatRoomRepository.save(room);
-        });
+    /**
+     * One page of the room's members, ordered by user id. Members of private
+     * rooms are only visible to other members.
+     */
+    public List<String> getRoomMemberIds(String roomId, String requesterId, String afterUserId, int limit) {
+        ChatRoom room = getRoomEntityById(roomId);
+        if (!room.isPublic() && !membershipService.isMember(roomId, requesterId)) {
+            throw new AccessDeniedException("Only members can list the members of a private room");
+        }
+        return membershipService.getMemberIds(roomId, afterUserId, limit);
+    }
+
+    /**
+     * Records the room's newest message. Written on the next flush, keeping
+     * only the latest message per room.
+     */
+    public void updateLastMessage(String roomId, String messageId, String senderName,
+                                  String content, LocalDateTime timestamp) {
+        LastMessage lastMessage = new LastMessage(messageId, senderName,
+                MessageUtils.getPreviewText(content, previewLength), timestamp);
+        pendingLastMessages.merge(roomId, lastMessage,
+                (pending, latest) -> latest.timestamp().isBefore(pending.timestamp()) ? pending : latest);
+    }
+
+    @Scheduled(fixedDelayString = "${rooms.last-message.flush-interval-ms:500}")
+    public void flushLastMessages() {
+        if (pendingLastMessages.isEmpty()) {
+            return;
+        }
+
+        // Lists loaded after a preview was written already contain it
+        long now = System.currentTimeMillis();
+        flushedPreviews.values().removeIf(flushed -> now - flushed.flushedAt() > listCacheTtlMs);
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatRoom.class);
+        Map<String, LastMessage> written = new HashMap<>();
+        for (String roomId : pendingLastMessages.keySet()) {
+            LastMessage lastMessage = pendingLastMessages.remove(roomId);
+            if (lastMessage == null) {
+                continue;
+            }
+            // Never move a room's preview backwards, e.g. behind another node's write
+            bulkOps.updateOne(
+                    Query.query(Criteria.where("id").is(roomId).orOperator(
+                            Criteria.where("lastMessageAt").is(null),
+                            Criteria.where("lastMessageAt").lt(lastMessage.timestamp()))),
+                    new Update()
+                            .set("lastMessageId", lastMessage.messageId())
+                            .set("lastMessageAt", lastMessage.timestamp())
+                            .set("lastMessageSenderName", lastMessage.senderName())
+                            .set("lastMessagePreview", lastMessage.preview()));
+            written.put(roomId, lastMessage);
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+
+        try {
+            bulkOps.execute();
+        } catch (Exception e) {
+            log.warn("Failed to write last messages for {} rooms: {}", written.size(), e.getMessage());
+            return;
+        }
+        written.forEach(this::recordFlushedPreview);
+        try {
+            stringRedisTemplate.convertAndSend(roomsChannel, objectMapper.writeValueAsString(written));
+        } catch (Exception e) {
+            log.warn("Failed to publish room previews: {}", e.getMessage());
+        }
     }
 
     public ChatRoom getRoomEntityById(String roomId) {
@@ -198,13 +447,36 @@ public class ChatRoomService {
     }
 
     public boolean isUserInRoom(String roomId, String userId) {
-        ChatRoom room = chatRoomRepository.findById(roomId).orElse(null);
-        if (room == null) return false;
         // General room is accessible to all users
-        if (GENERAL_ROOM_NAME.equals(room.getName())) {
+        if (roomId.equals(generalRoomId)) {
             return true;
         }
         // Other rooms require membership
-        return room.hasMember(userId);
+        return membershipService.isMember(roomId, userId);
+    }
+
+    public String getGeneralRoomId() {
+        return generalRoomId;
+    }
+
+    private ChatRoom adjustMemberCount(String roomId, int delta) {
+        ChatRoom room = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("id").is(roomId)),
+                new Update().inc("memberCount", delta),
+                FindAndModifyOptions.options().returnNew(true),
+                ChatRoom.class);
+        if (room == null) {
+            throw new ChatRoomNotFoundException("Chat room not found with id: " + roomId);
+        }
+        return room;
+    }
+
+    private record LastMessage(String messageId, String senderName, String preview, LocalDateTime timestamp) {
+    }
+
+    private record FlushedPreview(LastMessage lastMessage, long flushedAt) {
+    }
+
+    public record RoomList(List<ChatRoomDTO> rooms, String etag, Set<String> roomIds, long loadedAt) {
     }
 }
@@ -0,0 +1,116 @@
+package com.chatty.service;
+
+import com.chatty.dao.UserRepository;
+import com.chatty.dto.MembershipEventDTO;
+import com.chatty.entity.Message;
+import com.chatty.entity.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves a user's contacts: everyone they share a room or a private
+ * conversation with. Used to scope presence updates to the users who can
+ * actually see each other.
+ *
+ * The default "General" room is open to everyone and is left out here,
+ * otherwise every user would be everyone's contact and each presence change
+ * would fan out to every session one copy at a time. Presence within General
+ * is broadcast once on its own topic by {@code PresenceBroadcaster}.
+ *
+ * Contacts are cached for a short while. A membership change, on any node,
+ * drops the cached contacts of the user who joined or left and of every user
+ * who was in that room when their contacts were loaded.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContactService {
+
+    private final UserRepository userRepository;
+    private final RoomMembershipService membershipService;
+    private final ChatRoomService chatRoomService;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${presence.contacts-cache-ms:60000}")
+    private long contactsCacheMs;
+
+    private final Map<String, CachedContacts> contactsCache = new ConcurrentHashMap<>();
+
+    /**
+     * Usernames of the user's contacts, cached for a short while.
+     */
+    public Set<String> getContactUsernames(String username) {
+        CachedContacts cached = contactsCache.get(username);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < contactsCacheMs) {
+            return cached.usernames();
+        }
+
+        CachedContacts loaded = loadContacts(username, now);
+        contactsCache.put(username, loaded);
+        return loaded.usernames();
+    }
+
+    public void evict(String username) {
+        contactsCache.remove(username);
+    }
+
+    @EventListener
+    public void onMembershipChanged(MembershipEventDTO event) {
+        contactsCache.values().removeIf(cached ->
+                cached.userId().equals(event.getUserId()) || cached.roomIds().contains(event.getRoomId()));
+    }
+
+    private CachedContacts loadContacts(String username, long now) {
+        Optional<User> user = userRepository.findByUsername(username);
+        if (user.isEmpty()) {
+            return new CachedContacts("", Set.of(), Collections.emptySet(), now);
+        }
+        String userId = user.get().getId();
+
+        Set<String> contactIds = new HashSet<>();
+
+        // Members of every room the user belongs to
+        Set<String> roomIds = membershipService.getRoomIds(userId).stream()
+                .filter(roomId -> !roomId.equals(chatRoomService.getGeneralRoomId()))
+                .collect(Collectors.toUnmodifiableSet());
+        contactIds.addAll(membershipService.getMemberIds(roomIds));
+
+        // Everyone the user has a private conversation with
+        contactIds.addAll(mongoTemplate.findDistinct(
+                Query.query(Criteria.where("senderId").is(userId).and("isPrivate").is(true)),
+                "recipientId", Message.class, String.class));
+        contactIds.addAll(mongoTemplate.findDistinct(
+                Query.query(Criteria.where("recipientId").is(userId).and("isPrivate").is(true)),
+                "senderId", Message.class, String.class));
+
+        contactIds.remove(userId);
+        if (contactIds.isEmpty()) {
+            return new CachedContacts(userId, roomIds, Collections.emptySet(), now);
+        }
+
+        Query usernamesQuery = Query.query(Criteria.where("id").in(contactIds));
+        usernamesQuery.fields().include("username");
+        Set<String> usernames = mongoTemplate.find(usernamesQuery, User.class).stream()
+                .map(User::getUsername)
+                .collect(Collectors.toUnmodifiableSet());
+        return new CachedContacts(userId, roomIds, usernames, now);
+    }
+
+    private record CachedContacts(String userId, Set<String> roomIds, Set<String> usernames, long loadedAt) {
+    }
+}
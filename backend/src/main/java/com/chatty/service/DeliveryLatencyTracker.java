@@ -0,0 +1,176 @@
+package com.chatty.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-hop delivery latency of chat messages.
+ *
+ * The handler that accepts a SEND frame stamps the message with its ingress
+ * time, the time it was persisted and, if the client sent one, the client's
+ * send time. These travel as Kafka record headers; the record's own
+ * timestamp is the produce time. The consuming node records each hop into a
+ * histogram per topic (and per node, via the {@code node} common tag):
+ *
+ * client→ingress, ingress→persist, persist→produce, produce→consume,
+ * consume→dispatch and ingress→dispatch.
+ *
+ * Hops that cross nodes compare wall clocks, so they include clock skew.
+ * Negative values are clamped to zero. The client's send time is whatever
+ * the client claims, so it is dropped unless it lies within
+ * {@link #CLIENT_CLOCK_WINDOW_MS} of the ingress time.
+ */
+@Component
+@RequiredArgsConstructor
+public class DeliveryLatencyTracker {
+
+    private final MeterRegistry meterRegistry;
+
+    public static final String CLIENT_SENT_AT_HEADER = "chatty-client-sent-at";
+    public static final String INGRESS_AT_HEADER = "chatty-ingress-at";
+    public static final String PERSISTED_AT_HEADER = "chatty-persisted-at";
+
+    public static final long CLIENT_CLOCK_WINDOW_MS = 60_000;
+
+    @Value("${kafka.topics.public-messages}")
+    private String publicMessagesTopic;
+
+    @Value("${kafka.topics.private-messages}")
+    private String privateMessagesTopic;
+
+    @Value("${kafka.topics.notifications}")
+    private String notificationsTopic;
+
+    public enum Hop {
+        CLIENT_TO_INGRESS,
+        INGRESS_TO_PERSIST,
+        PERSIST_TO_PRODUCE,
+        PRODUCE_TO_CONSUME,
+        CONSUME_TO_DISPATCH,
+        END_TO_END;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Timestamps taken on the ingress node, in epoch millis; 0 when unknown.
+     */
+    public record IngressTimes(long clientSentAt, long ingressAt, long persistedAt) {
+
+        /**
+         * Ingress times with the client's claimed send time, or 0 for it if
+         * it is missing or too far from the ingress time to be plausible.
+         */
+        public static IngressTimes of(Long clientSentAt, long ingressAt, long persistedAt) {
+            boolean plausible = clientSentAt != null && Math.abs(ingressAt - clientSentAt) <= CLIENT_CLOCK_WINDOW_MS;
+            return new IngressTimes(plausible ? clientSentAt : 0, ingressAt, persistedAt);
+        }
+
+        public void writeTo(Headers headers) {
+            if (clientSentAt > 0) {
+                headers.add(CLIENT_SENT_AT_HEADER, encode(clientSentAt));
+            }
+            headers.add(INGRESS_AT_HEADER, encode(ingressAt));
+            headers.add(PERSISTED_AT_HEADER, encode(persistedAt));
+        }
+
+        public static IngressTimes readFrom(Headers headers) {
+            return new IngressTimes(
+                    decode(headers.lastHeader(CLIENT_SENT_AT_HEADER)),
+                    decode(headers.lastHeader(INGRESS_AT_HEADER)),
+                    decode(headers.lastHeader(PERSISTED_AT_HEADER)));
+        }
+
+        private static byte[] encode(long value) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+        }
+
+        private static long decode(Header header) {
+            return header != null && header.value().length == Long.BYTES ? ByteBuffer.wrap(header.value()).getLong() : 0;
+        }
+    }
+
+    // topic -> timers indexed by hop
+    private final Map<String, Timer[]> timersByTopic = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (String topic : new String[]{publicMessagesTopic, privateMessagesTopic, notificationsTopic}) {
+            Timer[] timers = new Timer[Hop.values().length];
+            for (Hop hop : Hop.values()) {
+                timers[hop.ordinal()] = Timer.builder("chatty.messages.latency")
+                        .description("Delivery latency of chat messages per hop")
+                        .tag("topic", topic)
+                        .tag("hop", hop.key())
+                        // Kept in-process for the latency actuator endpoint
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(meterRegistry);
+            }
+            timersByTopic.put(topic, timers);
+        }
+    }
+
+    /**
+     * Records every hop of a consumed record up to its dispatch.
+     */
+    public void recordDelivery(String topic, IngressTimes times, long producedAt, long consumedAt, long dispatchedAt) {
+        Timer[] timers = timersByTopic.get(topic);
+        if (timers == null) {
+            return;
+        }
+        if (times.clientSentAt() > 0 && times.ingressAt() > 0) {
+            record(timers, Hop.CLIENT_TO_INGRESS, times.clientSentAt(), times.ingressAt());
+        }
+        if (times.ingressAt() > 0 && times.persistedAt() > 0) {
+            record(timers, Hop.INGRESS_TO_PERSIST, times.ingressAt(), times.persistedAt());
+            record(timers, Hop.PERSIST_TO_PRODUCE, times.persistedAt(), producedAt);
+            record(timers, Hop.END_TO_END, times.ingressAt(), dispatchedAt);
+        }
+        record(timers, Hop.PRODUCE_TO_CONSUME, producedAt, consumedAt);
+        record(timers, Hop.CONSUME_TO_DISPATCH, consumedAt, dispatchedAt);
+    }
+
+    /**
+     * Current count, mean, max and percentiles in milliseconds, by topic and hop.
+     */
+    public Map<String, Map<String, Map<String, Object>>> snapshot() {
+        Map<String, Map<String, Map<String, Object>>> result = new LinkedHashMap<>();
+        timersByTopic.forEach((topic, timers) -> {
+            Map<String, Map<String, Object>> hops = new LinkedHashMap<>();
+            for (Hop hop : Hop.values()) {
+                HistogramSnapshot snapshot = timers[hop.ordinal()].takeSnapshot();
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("count", snapshot.count());
+                stats.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+                stats.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+                for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                    stats.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+                }
+                hops.put(hop.key(), stats);
+            }
+            result.put(topic, hops);
+        });
+        return result;
+    }
+
+    private static void record(Timer[] timers, Hop hop, long from, long to) {
+        timers[hop.ordinal()].record(Math.max(0, to - from), TimeUnit.MILLISECONDS);
+    }
+}
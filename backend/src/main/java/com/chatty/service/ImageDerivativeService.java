@@ -0,0 +1,366 @@
+package com.chatty.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Downscaled copies of images in a few fixed sizes.
+ *
+ * Derivatives are keyed by the source's content hash, so every attachment
+ * or avatar with the same bytes shares them, and are written next to the
+ * attachment store under {@code derivatives/<2 hex>/<hash>-<variant>.jpg}
+ * (or {@code .png} when the image has transparency). They are generated on
+ * a small bounded pool, never on the request thread: a request for a
+ * missing derivative schedules it and the caller serves the original in the
+ * meantime. When the queue is full the job is dropped and retried by the
+ * next request.
+ *
+ * Sources are decoded subsampled to about the size of the largest variant,
+ * so a large photo never needs its full resolution in memory. Sources that
+ * can't be decoded or are too large get a {@code <hash>.skip} marker and
+ * are not tried again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageDerivativeService {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${attachments.storage-dir:./data/attachments}")
+    private String storageDir;
+
+    @Value("${images.derivatives.threads:2}")
+    private int threads;
+
+    @Value("${images.derivatives.queue-capacity:100}")
+    private int queueCapacity;
+
+    // Larger sources are not decoded at all, even subsampled
+    @Value("${images.derivatives.max-source-pixels:40000000}")
+    private long maxSourcePixels;
+
+    @Value("${images.derivatives.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    /**
+     * Fixed sizes, by longest edge in pixels. Sources are never upscaled.
+     */
+    public enum Variant {
+        THUMB(128),
+        MEDIUM(512),
+        LARGE(1280);
+
+        private final int maxDimension;
+
+        Variant(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * The variant named by a request parameter, or null if unknown.
+         */
+        public static Variant fromKey(String key) {
+            for (Variant variant : values()) {
+                if (variant.key().equalsIgnoreCase(key)) {
+                    return variant;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Opens the original image bytes; called on a worker thread.
+     */
+    @FunctionalInterface
+    public interface ImageSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * A generated derivative on disk.
+     */
+    public record Derivative(Path path, String contentType, long size) {
+    }
+
+    private static final Set<String> SUPPORTED_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/bmp");
+    private static final Variant LARGEST_VARIANT = Variant.LARGE;
+
+    private Path derivativesDir;
+    private ThreadPoolTaskExecutor executor;
+
+    // Content hashes with a generation job queued or running
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private Timer generationTimer;
+    private Counter rejected;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() throws IOException {
+        derivativesDir = Files.createDirectories(Paths.get(storageDir).toAbsolutePath().resolve("derivatives"));
+        // Decode in memory rather than through temp files
+        ImageIO.setUseCache(false);
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("image-derivatives-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+
+        generationTimer = Timer.builder("chatty.images.derivatives.duration")
+                .description("Time to decode an image and write all of its derivatives")
+                .register(meterRegistry);
+        rejected = Counter.builder("chatty.images.derivatives.rejected")
+                .description("Generation jobs dropped because the queue was full")
+                .register(meterRegistry);
+        failed = Counter.builder("chatty.images.derivatives.failed")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean supports(String contentType) {
+        return contentType != null && SUPPORTED_TYPES.contains(contentType.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The derivative if it has been generated. Otherwise schedules generation
+     * from {@code source} and returns empty.
+     */
+    public Optional<Derivative> find(String contentHash, Variant variant, ImageSource source) {
+        Optional<Derivative> derivative = existing(contentHash, variant);
+        if (derivative.isEmpty()) {
+            schedule(contentHash, source);
+        }
+        return derivative;
+    }
+
+    /**
+     * Queues generation of every variant missing for {@code contentHash}.
+     * Never blocks; a no-op if a job for the hash is already pending.
+     */
+    public void schedule(String contentHash, ImageSource source) {
+        if (skipped(contentHash) || !pending.add(contentHash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generationTimer.record(() -> generate(contentHash, source));
+                } finally {
+                    pending.remove(contentHash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(contentHash);
+            rejected.increment();
+            log.debug("Derivative queue full, skipped {}", contentHash);
+        }
+    }
+
+    private void generate(String contentHash, ImageSource source) {
+        boolean missing = false;
+        for (Variant variant : Variant.values()) {
+            missing |= existing(contentHash, variant).isEmpty();
+        }
+        if (!missing) {
+            return;
+        }
+
+        try {
+            BufferedImage image = decode(source);
+            if (image == null) {
+                failed.increment();
+                markSkipped(contentHash);
+                return;
+            }
+            boolean alpha = image.getColorModel().hasAlpha();
+            for (Variant variant : Variant.values()) {
+                Path target = derivativePath(contentHash, variant, alpha);
+                if (!Files.exists(target)) {
+                    write(scale(image, variant.maxDimension, alpha), alpha, target);
+                }
+            }
+        } catch (IIOException | RuntimeException e) {
+            // Malformed image data; reading it again won't help
+            failed.increment();
+            markSkipped(contentHash);
+            log.warn("Failed to generate derivatives for {}: {}", contentHash, e.getMessage());
+        } catch (IOException e) {
+            // Possibly transient; the next request retries
+            failed.increment();
+            log.warn("Failed to generate derivatives for {}: {}", contentHash, e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes the first frame, refusing images whose declared dimensions
+     * exceed {@code max-source-pixels} before any pixels are read. Only every
+     * n-th pixel is decoded, for the largest n that keeps the longest edge at
+     * least as long as the largest variant.
+     */
+    private BufferedImage decode(ImageSource source) throws IOException {
+        try (InputStream in = source.open(); ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            if (stream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxSourcePixels) {
+                    log.debug("Skipping derivatives of a {} pixel image", pixels);
+                    return null;
+                }
+                int subsampling = Math.max(1,
+                        Math.max(reader.getWidth(0), reader.getHeight(0)) / LARGEST_VARIANT.maxDimension);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales so the longest edge is at most {@code maxDimension}, halving
+     * repeatedly so bilinear filtering doesn't alias on large reductions.
+     */
+    private static BufferedImage scale(BufferedImage source, int maxDimension, boolean alpha) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double factor = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * factor));
+        int targetHeight = Math.max(1, (int) Math.round(height * factor));
+
+        BufferedImage current = source;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private void write(BufferedImage image, boolean alpha, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            if (alpha) {
+                ImageIO.write(image, "png", temp.toFile());
+            } else {
+                writeJpeg(image, temp);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private Optional<Derivative> existing(String contentHash, Variant variant) {
+        for (boolean alpha : new boolean[]{false, true}) {
+            Path path = derivativePath(contentHash, variant, alpha);
+            try {
+                return Optional.of(new Derivative(path, alpha ? "image/png" : "image/jpeg", Files.size(path)));
+            } catch (IOException e) {
+                // Not generated in this format
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean skipped(String contentHash) {
+        return Files.exists(skipMarkerPath(contentHash));
+    }
+
+    private void markSkipped(String contentHash) {
+        Path marker = skipMarkerPath(contentHash);
+        try {
+            Files.createDirectories(marker.getParent());
+            Files.write(marker, new byte[0]);
+        } catch (IOException e) {
+            log.warn("Failed to mark {} as skipped: {}", contentHash, e.getMessage());
+        }
+    }
+
+    private Path skipMarkerPath(String contentHash) {
+        return derivativesDir.resolve(contentHash.substring(0, 2)).resolve(contentHash + ".skip");
+    }
+
+    private Path derivativePath(String contentHash, Variant variant, boolean alpha) {
+        return derivativesDir.resolve(contentHash.substring(0, 2))
+                .resolve(contentHash + "-" + variant.key() + (alpha ? ".png" : ".jpg"));
+    }
+}
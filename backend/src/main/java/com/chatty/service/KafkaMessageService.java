@@ -1,21 +1,34 @@
 package com.chatty.service;
 
 import com.chatty.dto.MessageDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class KafkaMessageService {
 
-    private final KafkaTemplate<String, MessageDTO> kafkaTemplate;
+    private final KafkaPublisher kafkaPublisher;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final DeliveryLatencyTracker latencyTracker;
+    private final RoomPartitioner roomPartitioner;
+    private final RoomReorderBuffer roomReorderBuffer;
+    private final MessageReplayService messageReplayService;
 
     @Value("${kafka.topics.public-messages}")
     private String publicMessagesTopic;
@@ -26,19 +39,68 @@ public class KafkaMessageService {
     @Value("${kafka.topics.notifications}")
     private String notificationsTopic;
 
-    public void sendPublicMessage(MessageDTO message) {
+    // Room frames carry senderId + profile version instead of profile strings
+    @Value("${websocket.frames.compact:false}")
+    private boolean compactFrames;
+
+    // Every Nth room message is serialized both ways to compare frame sizes; 0 = off
+    @Value("${websocket.frames.size-sample-rate:100}")
+    private int sizeSampleRate;
+
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private DistributionSummary fullFrameBytes;
+    private DistributionSummary compactFrameBytes;
+
+    @PostConstruct
+    public void init() {
+        fullFrameBytes = DistributionSummary.builder("chatty.messages.frame.bytes")
+                .description("Serialized size of sampled room message frames")
+                .baseUnit("bytes")
+                .tag("mode", "full")
+                .register(meterRegistry);
+        compactFrameBytes = DistributionSummary.builder("chatty.messages.frame.bytes")
+                .description("Serialized size of sampled room message frames")
+                .baseUnit("bytes")
+                .tag("mode", "compact")
+                .register(meterRegistry);
+    }
+
+    public void sendPublicMessage(MessageDTO message, DeliveryLatencyTracker.IngressTimes times) {
         log.debug("Sending public message to Kafka topic: {}", publicMessagesTopic);
-        kafkaTemplate.send(publicMessagesTopic, message.getChatRoomId(), message);
+        // The compact copy is only built when it is sent or sampled
+        MessageDTO compact = compactFrames ? message.toCompact() : null;
+        sampleFrameSizes(message, compact);
+        Integer partition = roomPartitioner.partitionFor(message.getChatRoomId(), message.getSeq());
+        ProducerRecord<String, MessageDTO> record = new ProducerRecord<>(publicMessagesTopic, partition,
+                message.getChatRoomId(), compact != null ? compact : message);
+        times.writeTo(record.headers());
+        kafkaPublisher.sendChat(record, message.getSenderUsername());
     }
 
-    public void sendPrivateMessage(MessageDTO message) {
+    private void sampleFrameSizes(MessageDTO full, MessageDTO compact) {
+        if (sizeSampleRate <= 0 || sampleCounter.incrementAndGet() % sizeSampleRate != 0) {
+            return;
+        }
+        try {
+            fullFrameBytes.record(objectMapper.writeValueAsBytes(full).length);
+            compactFrameBytes.record(objectMapper.writeValueAsBytes(compact != null ? compact : full.toCompact()).length);
+        } catch (Exception e) {
+            log.debug("Failed to measure frame sizes: {}", e.getMessage());
+        }
+    }
+
+    public void sendPrivateMessage(MessageDTO message, DeliveryLatencyTracker.IngressTimes times) {
         log.debug("Sending private message to Kafka topic: {}", privateMessagesTopic);
-        kafkaTemplate.send(privateMessagesTopic, message.getRecipientId(), message);
+        ProducerRecord<String, MessageDTO> record =
+                new ProducerRecord<>(privateMessagesTopic, message.getRecipientId(), message);
+        times.writeTo(record.headers());
+        kafkaPublisher.sendChat(record, message.getSenderUsername());
     }
 
     public void sendNotification(MessageDTO notification) {
         log.debug("Sending notification to Kafka topic: {}", notificationsTopic);
-        kafkaTemplate.send(notificationsTopic, notification.getSenderId(), notification);
+        kafkaPublisher.sendEphemeral(new ProducerRecord<>(notificationsTopic, notification.getSenderId(), notification));
     }
 
     @KafkaListener(
@@ -46,12 +108,26 @@ public class KafkaMessageService {
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consumePublicMessage(MessageDTO message) {
+    public void consumePublicMessage(ConsumerRecord<String, MessageDTO> record) {
+        long consumedAt = System.currentTimeMillis();
+        MessageDTO message = record.value();
         log.debug("Consumed public message from Kafka for room: {}", message.getChatRoomId());
-        
-        // Broadcast to all subscribers of this room
+
+        // Broadcast to all subscribers of this room, in sequence order
         String destination = "/topic/public." + message.getChatRoomId();
-        messagingTemplate.convertAndSend(destination, message);
+        roomReorderBuffer.submit(message.getChatRoomId(), message.getSeq(), () -> {
+            // Kept for clients resuming the room after a reconnect. Recorded first:
+            // the broker dispatches asynchronously, and a resume whose subscription
+            // misses this broadcast must find the message in the window
+            messageReplayService.record(message);
+            messagingTemplate.convertAndSend(destination, message);
+            recordDelivery(record, consumedAt);
+        });
+    }
+
+    private void recordDelivery(ConsumerRecord<String, MessageDTO> record, long consumedAt) {
+        latencyTracker.recordDelivery(record.topic(), DeliveryLatencyTracker.IngressTimes.readFrom(record.headers()),
+                record.timestamp(), consumedAt, System.currentTimeMillis());
     }
 
     @KafkaListener(
@@ -59,7 +135,9 @@ public class KafkaMessageService {
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consumePrivateMessage(MessageDTO message) {
+    public void consumePrivateMessage(ConsumerRecord<String, MessageDTO> record) {
+        long consumedAt = System.currentTimeMillis();
+        MessageDTO message = record.value();
         log.debug("Consumed private message from Kafka for user: {}", message.getRecipientUsername());
         
         // Send to specific user's private queue (use username to match Principal)
@@ -75,6 +153,7 @@ public class KafkaMessageService {
                 "/queue/private",
                 message
         );
+        recordDelivery(record, consumedAt);
     }
 
     @KafkaListener(
@@ -82,10 +161,13 @@ public class KafkaMessageService {
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consumeNotification(MessageDTO notification) {
+    public void consumeNotification(ConsumerRecord<String, MessageDTO> record) {
+        long consumedAt = System.currentTimeMillis();
+        MessageDTO notification = record.value();
         log.debug("Consumed notification from Kafka");
-        
+
         // Broadcast notifications to all connected users
         messagingTemplate.convertAndSend("/topic/notifications", notification);
+        recordDelivery(record, consumedAt);
     }
 }
@@ -0,0 +1,249 @@
+package com.chatty.service;
+
+import com.chatty.dto.ApiResponse;
+import com.chatty.dto.MessageDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.BufferExhaustedException;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends records without waiting for the broker.
+ *
+ * Chat records go through the durable producer profile. Their messages are
+ * already saved, so a send never fails back to the client, which would
+ * resend and duplicate the message. A record that can't even be buffered
+ * (full buffer or no metadata within max.block.ms) is handled like one that
+ * fails after buffering: retried up to
+ * {@code kafka.producer.chat.failure-retries} times if the error is
+ * retriable, then written to the dead-letter topic, and the sender is told
+ * on {@code /user/queue/errors} that the message was saved but not delivered
+ * live. Ephemeral records use the best-effort profile; their failures are
+ * only counted.
+ *
+ * Completion callbacks run on the producer's I/O thread, so they only
+ * record metrics; failure handling is handed to a small bounded pool.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KafkaPublisher {
+
+    private final KafkaTemplate<String, MessageDTO> kafkaTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("ephemeralKafkaTemplate")
+    private KafkaTemplate<String, MessageDTO> ephemeralKafkaTemplate;
+
+    @Value("${kafka.topics.dead-letter:chat.dead-letter}")
+    private String deadLetterTopic;
+
+    @Value("${kafka.producer.chat.failure-retries:1}")
+    private int failureRetries;
+
+    @Value("${kafka.producer.failure-handler.queue-capacity:1000}")
+    private int failureQueueCapacity;
+
+    private ThreadPoolTaskExecutor failureExecutor;
+    private final Map<String, ProduceMeters> metersByTopic = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        failureExecutor = new ThreadPoolTaskExecutor();
+        failureExecutor.setThreadNamePrefix("kafka-failures-");
+        failureExecutor.setCorePoolSize(1);
+        failureExecutor.setMaxPoolSize(1);
+        failureExecutor.setQueueCapacity(failureQueueCapacity);
+        failureExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        failureExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        failureExecutor.shutdown();
+    }
+
+    /**
+     * Sends a chat record. {@code senderUsername} is told if it is finally
+     * undeliverable.
+     */
+    public void sendChat(ProducerRecord<String, MessageDTO> record, String senderUsername) {
+        send(record, senderUsername, 0);
+    }
+
+    /**
+     * Sends a best-effort record; failures are counted and dropped.
+     */
+    public void sendEphemeral(ProducerRecord<String, MessageDTO> record) {
+        ProduceMeters meters = meters(record.topic());
+        long start = System.nanoTime();
+        CompletableFuture<SendResult<String, MessageDTO>> future = doSend(ephemeralKafkaTemplate, record);
+        if (future.isCompletedExceptionally()) {
+            meters.rejected.increment();
+            return;
+        }
+        future.whenComplete((result, ex) -> meters.complete(start, ex));
+    }
+
+    private void send(ProducerRecord<String, MessageDTO> record, String senderUsername, int attempt) {
+        ProduceMeters meters = meters(record.topic());
+        long start = System.nanoTime();
+        CompletableFuture<SendResult<String, MessageDTO>> future = doSend(kafkaTemplate, record);
+
+        // Failed before send returned: the record was never buffered
+        if (future.isCompletedExceptionally()) {
+            Throwable cause = future.handle((result, ex) -> ex).join();
+            if (isBackpressure(cause)) {
+                meters.rejected.increment();
+                handOff(record, senderUsername, () -> onFailure(record, senderUsername, attempt, cause));
+                return;
+            }
+        }
+
+        future.whenComplete((result, ex) -> {
+            meters.complete(start, ex);
+            if (ex != null) {
+                handOff(record, senderUsername, () -> onFailure(record, senderUsername, attempt, ex));
+            }
+        });
+    }
+
+    private static CompletableFuture<SendResult<String, MessageDTO>> doSend(
+            KafkaTemplate<String, MessageDTO> template, ProducerRecord<String, MessageDTO> record) {
+        try {
+            return template.send(record);
+        } catch (KafkaException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void onFailure(ProducerRecord<String, MessageDTO> record, String senderUsername, int attempt, Throwable ex) {
+        if (attempt < failureRetries && hasCause(ex, RetriableException.class)) {
+            log.debug("Retrying record for {} after: {}", record.topic(), ex.getMessage());
+            send(record, senderUsername, attempt + 1);
+            return;
+        }
+
+        log.error("Failed to deliver record to {}: {}", record.topic(), ex.getMessage());
+        deadLetter(record, ex);
+        notifyUndelivered(record, senderUsername);
+    }
+
+    private void notifyUndelivered(ProducerRecord<String, MessageDTO> record, String senderUsername) {
+        if (senderUsername == null) {
+            return;
+        }
+        MessageDTO message = record.value();
+        messagingTemplate.convertAndSendToUser(senderUsername, "/queue/errors",
+                ApiResponse.<String>builder()
+                        .success(false)
+                        .message("Your message was saved but could not be delivered live. Reload to see it.")
+                        .data(message != null ? message.getId() : null)
+                        .timestamp(LocalDateTime.now())
+                        .build());
+    }
+
+    private void deadLetter(ProducerRecord<String, MessageDTO> record, Throwable ex) {
+        ProducerRecord<String, MessageDTO> deadLetter = new ProducerRecord<>(
+                deadLetterTopic, null, record.key(), record.value(), record.headers());
+        deadLetter.headers().add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+        deadLetter.headers().add(KafkaHeaders.DLT_EXCEPTION_FQCN, ex.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        deadLetter.headers().add(KafkaHeaders.DLT_EXCEPTION_MESSAGE,
+                String.valueOf(ex.getMessage()).getBytes(StandardCharsets.UTF_8));
+
+        ProduceMeters meters = meters(deadLetterTopic);
+        long start = System.nanoTime();
+        doSend(kafkaTemplate, deadLetter).whenComplete((result, dltEx) -> {
+            meters.complete(start, dltEx);
+            if (dltEx != null) {
+                // The message itself is in Mongo; only the live broadcast is lost
+                log.error("Failed to dead-letter record from {}: {}", record.topic(), dltEx.getMessage());
+            }
+        });
+    }
+
+    private void handOff(ProducerRecord<String, MessageDTO> record, String senderUsername, Runnable task) {
+        try {
+            failureExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.error("Kafka failure handler saturated, dropping failed record");
+            notifyUndelivered(record, senderUsername);
+        }
+    }
+
+    private static boolean isBackpressure(Throwable ex) {
+        return hasCause(ex, TimeoutException.class) || hasCause(ex, BufferExhaustedException.class);
+    }
+
+    private static boolean hasCause(Throwable ex, Class<? extends Throwable> type) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ProduceMeters meters(String topic) {
+        return metersByTopic.computeIfAbsent(topic, ProduceMeters::new);
+    }
+
+    private class ProduceMeters {
+
+        final Timer acked;
+        final Counter failed;
+        final Counter rejected;
+
+        ProduceMeters(String topic) {
+            acked = Timer.builder("chatty.kafka.produce")
+                    .description("Time from send to broker acknowledgement")
+                    .tag("topic", topic)
+                    .register(meterRegistry);
+            failed = counter(topic, "failed");
+            rejected = counter(topic, "rejected");
+        }
+
+        void complete(long startNanos, Throwable ex) {
+            if (ex == null) {
+                acked.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            } else {
+                failed.increment();
+            }
+        }
+
+        private Counter counter(String topic, String result) {
+            return Counter.builder("chatty.kafka.produce.errors")
+                    .tag("topic", topic)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
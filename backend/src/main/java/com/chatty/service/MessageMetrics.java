@@ -0,0 +1,93 @@
+package com.chatty.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preallocated meters for the message send path and the message caches.
+ *
+ * Stages are timed with {@link System#nanoTime()} deltas chained through
+ * {@link #record}, so instrumenting a stage costs one clock read and one
+ * timer update, with no per-message allocation or tag lookup.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public enum Stage {
+        USER_LOOKUP,
+        MONGO_SAVE,
+        LAST_MESSAGE,
+        REDIS_CACHE,
+        KAFKA_SEND,
+        // SEND frame received to Kafka send returned
+        TOTAL
+    }
+
+    public enum Cache {
+        ROOM_MESSAGES("getRoomMessages"),
+        PRIVATE_MESSAGES("getPrivateMessages");
+
+        private final String method;
+
+        Cache(String method) {
+            this.method = method;
+        }
+    }
+
+    // [isPrivate ? 1 : 0][stage]
+    private final Timer[][] stageTimers = new Timer[2][Stage.values().length];
+    // [cache][hit ? 1 : 0]
+    private final Counter[][] cacheCounters = new Counter[Cache.values().length][2];
+
+    @PostConstruct
+    public void init() {
+        for (Stage stage : Stage.values()) {
+            stageTimers[0][stage.ordinal()] = stageTimer("public", stage);
+            stageTimers[1][stage.ordinal()] = stageTimer("private", stage);
+        }
+        for (Cache cache : Cache.values()) {
+            cacheCounters[cache.ordinal()][0] = cacheCounter(cache, "miss");
+            cacheCounters[cache.ordinal()][1] = cacheCounter(cache, "hit");
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos} against the stage and returns
+     * the current time, to be passed as the start of the next stage.
+     */
+    public long record(boolean isPrivate, Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stageTimers[isPrivate ? 1 : 0][stage.ordinal()].record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void cacheResult(Cache cache, boolean hit) {
+        cacheCounters[cache.ordinal()][hit ? 1 : 0].increment();
+    }
+
+    private Timer stageTimer(String type, Stage stage) {
+        return Timer.builder("chatty.messages.stage")
+                .description("Time spent in each stage of handling a chat message")
+                .tag("type", type)
+                .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+    }
+
+    private Counter cacheCounter(Cache cache, String result) {
+        return Counter.builder("chatty.messages.cache")
+                .description("Redis message cache lookups")
+                .tag("method", cache.method)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
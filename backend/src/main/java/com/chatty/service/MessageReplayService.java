@@ -0,0 +1,174 @@
+package com.chatty.service;
+
+import com.chatty.dto.MessageDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the room messages a client missed while its connection was down.
+ *
+ * Each node keeps the last {@code replay.buffer-size} messages it dispatched
+ * per room. A resume is answered from that window if it covers everything
+ * after the client's last sequence number, then from the Redis message
+ * cache, and otherwise from Mongo. More than {@code replay.max-messages}
+ * missed messages is treated as too far behind: the client reloads history
+ * instead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageReplayService {
+
+    private final MessageService messageService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${replay.buffer-size:200}")
+    private int bufferSize;
+
+    @Value("${replay.max-messages:200}")
+    private int maxMessages;
+
+    @Value("${replay.idle-ttl-ms:600000}")
+    private long idleTtlMs;
+
+    public enum Source {
+        MEMORY,
+        REDIS,
+        MONGO,
+        // Too far behind, or the lookup failed
+        NONE
+    }
+
+    /**
+     * Missed messages, oldest first; {@code messages} is null when the client
+     * has to reload history.
+     */
+    public record Replay(Source source, List<MessageDTO> messages) {
+    }
+
+    private final Map<String, RoomWindow> windows = new ConcurrentHashMap<>();
+
+    private final Counter[] replays = new Counter[Source.values().length];
+    private DistributionSummary replayedMessages;
+
+    @PostConstruct
+    public void init() {
+        for (Source source : Source.values()) {
+            replays[source.ordinal()] = Counter.builder("chatty.messages.replay")
+                    .description("Subscription resumes by where the missed messages came from")
+                    .tag("source", source.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry);
+        }
+        replayedMessages = DistributionSummary.builder("chatty.messages.replay.size")
+                .description("Messages replayed per resumed subscription")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Remembers a room message dispatched on this node.
+     */
+    public void record(MessageDTO message) {
+        if (message.getSeq() == null || message.getChatRoomId() == null) {
+            return;
+        }
+        RoomWindow window = windows.computeIfAbsent(message.getChatRoomId(), id -> new RoomWindow());
+        synchronized (window) {
+            window.messages.addLast(message);
+            if (window.messages.size() > bufferSize) {
+                window.messages.removeFirst();
+            }
+            window.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    public Replay missedSince(String roomId, long lastSeq) {
+        Replay replay = lookup(roomId, lastSeq);
+        replays[replay.source().ordinal()].increment();
+        if (replay.messages() != null) {
+            replayedMessages.record(replay.messages().size());
+        }
+        return replay;
+    }
+
+    private Replay lookup(String roomId, long lastSeq) {
+        List<MessageDTO> missed = fromWindow(roomId, lastSeq);
+        if (missed != null) {
+            return new Replay(Source.MEMORY, missed);
+        }
+        try {
+            missed = messageService.getCachedRoomMessagesAfter(roomId, lastSeq);
+            if (missed != null) {
+                return new Replay(Source.REDIS, missed);
+            }
+            missed = messageService.getStoredRoomMessagesAfter(roomId, lastSeq, maxMessages + 1);
+            if (missed.size() <= maxMessages) {
+                return new Replay(Source.MONGO, missed);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to look up missed messages for room {}: {}", roomId, e.getMessage());
+        }
+        return new Replay(Source.NONE, null);
+    }
+
+    private List<MessageDTO> fromWindow(String roomId, long lastSeq) {
+        RoomWindow window = windows.get(roomId);
+        if (window == null) {
+            return null;
+        }
+        List<MessageDTO> missed = new ArrayList<>();
+        boolean reachesBack = false;
+        synchronized (window) {
+            for (MessageDTO message : window.messages) {
+                if (message.getSeq() > lastSeq) {
+                    missed.add(message);
+                } else if (message.getSeq() == lastSeq) {
+                    reachesBack = true;
+                }
+            }
+        }
+        if (!reachesBack) {
+            return null;
+        }
+        // Late messages are dispatched out of order; any hole means this node didn't see it
+        missed.sort(Comparator.comparing(MessageDTO::getSeq));
+        long expected = lastSeq + 1;
+        for (MessageDTO message : missed) {
+            if (message.getSeq() != expected++) {
+                return null;
+            }
+        }
+        return missed;
+    }
+
+    @Scheduled(fixedDelayString = "${replay.idle-ttl-ms:600000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTtlMs;
+        windows.forEach((roomId, window) -> {
+            synchronized (window) {
+                if (window.lastActivity < cutoff) {
+                    windows.remove(roomId, window);
+                }
+            }
+        });
+    }
+
+    private static class RoomWindow {
+        final ArrayDeque<MessageDTO> messages = new ArrayDeque<>();
+        long lastActivity;
+    }
+}
@@ -3,7 +3,9 @@ package com.chatty.service;
 import com.chatty.dao.MessageRepository;
 import com.chatty.dto.MessageDTO;
 import com.chatty.entity.Message;
+import com.chatty.entity.MessageAttachment;
 import com.chatty.entity.User;
+import com.chatty.exception.InvalidMessageException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -16,6 +18,7 @@ import org.springframework.stereotype.Service;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -28,6 +31,13 @@ public class MessageService {
     private final RedisTemplate<String, Object> redisTemplate;
     private final UserService userService;
     private final ChatRoomService chatRoomService;
+    private final AttachmentService attachmentService;
+    private final MessageMetrics messageMetrics;
+    private final RoomSequenceService roomSequenceService;
+
+    // Anything bigger belongs in an attachment, not in a STOMP/Kafka frame
+    @Value("${messages.max-content-length:4000}")
+    private int maxContentLength;
 
     @Value("${redis.cache.message-ttl:3600}")
     private long messageTtl;
@@ -39,63 +49,110 @@ public class MessageService {
     private static final String PRIVATE_MESSAGES_KEY = "chat:private:%s:%s:messages";
 
     public Message savePublicMessage(MessageDTO messageDTO, String senderUsername) {
+        long start = System.nanoTime();
         User sender = userService.getUserEntityByUsername(senderUsername);
+        start = messageMetrics.record(false, MessageMetrics.Stage.USER_LOOKUP, start);
+        MessageAttachment attachment = resolveAttachment(messageDTO, sender);
 
         Message message = Message.builder()
                 .senderId(sender.getId())
                 .senderUsername(sender.getUsername())
                 .senderDisplayName(sender.getDisplayName())
                 .senderProfilePicture(sender.getProfilePicture())
+                .senderProfileVersion(sender.getProfileVersion())
                 .chatRoomId(messageDTO.getChatRoomId())
-                .content(messageDTO.getContent())
-                .messageType(messageDTO.getMessageType() != null ? messageDTO.getMessageType() : Message.MessageType.TEXT)
+                .seq(roomSequenceService.next(messageDTO.getChatRoomId()))
+                .content(contentOf(messageDTO, attachment))
+                .attachment(attachment)
+                .messageType(messageTypeOf(messageDTO, attachment))
                 .timestamp(LocalDateTime.now())
                 .isPrivate(false)
                 .build();
 
         Message savedMessage = messageRepository.save(message);
+        start = messageMetrics.record(false, MessageMetrics.Stage.MONGO_SAVE, start);
 
         // Update chat room last message
-        chatRoomService.updateLastMessage(messageDTO.getChatRoomId(), savedMessage.getId(), savedMessage.getTimestamp());
+        chatRoomService.updateLastMessage(messageDTO.getChatRoomId(), savedMessage.getId(),
+                sender.getDisplayName() != null ? sender.getDisplayName() : sender.getUsername(),
+                savedMessage.getContent(), savedMessage.getTimestamp());
+        start = messageMetrics.record(false, MessageMetrics.Stage.LAST_MESSAGE, start);
 
         // Cache the message
         cacheRoomMessage(messageDTO.getChatRoomId(), savedMessage);
+        messageMetrics.record(false, MessageMetrics.Stage.REDIS_CACHE, start);
 
         log.debug("Saved public message in room {}", messageDTO.getChatRoomId());
         return savedMessage;
     }
 
     public Message savePrivateMessage(MessageDTO messageDTO, String senderUsername) {
+        long start = System.nanoTime();
         User sender = userService.getUserEntityByUsername(senderUsername);
         User recipient = userService.getUserEntityById(messageDTO.getRecipientId());
+        start = messageMetrics.record(true, MessageMetrics.Stage.USER_LOOKUP, start);
+        MessageAttachment attachment = resolveAttachment(messageDTO, sender);
 
         Message message = Message.builder()
                 .senderId(sender.getId())
                 .senderUsername(sender.getUsername())
                 .senderDisplayName(sender.getDisplayName())
                 .senderProfilePicture(sender.getProfilePicture())
+                .senderProfileVersion(sender.getProfileVersion())
                 .recipientId(recipient.getId())
                 .recipientUsername(recipient.getUsername())
-                .content(messageDTO.getContent())
-                .messageType(messageDTO.getMessageType() != null ? messageDTO.getMessageType() : Message.MessageType.TEXT)
+                .content(contentOf(messageDTO, attachment))
+                .attachment(attachment)
+                .messageType(messageTypeOf(messageDTO, attachment))
                 .timestamp(LocalDateTime.now())
                 .isPrivate(true)
                 .isRead(false)
                 .build();
 
         Message savedMessage = messageRepository.save(message);
+        start = messageMetrics.record(true, MessageMetrics.Stage.MONGO_SAVE, start);
 
         // Cache the message
         cachePrivateMessage(sender.getId(), recipient.getId(), savedMessage);
+        messageMetrics.record(true, MessageMetrics.Stage.REDIS_CACHE, start);
 
         log.debug("Saved private message from {} to {}", sender.getUsername(), recipient.getUsername());
         return savedMessage;
     }
 
+    private MessageAttachment resolveAttachment(MessageDTO messageDTO, User sender) {
+        if (messageDTO.getAttachmentId() == null) {
+            return null;
+        }
+        return attachmentService.toMessageAttachment(messageDTO.getAttachmentId(), sender.getId());
+    }
+
+    private String contentOf(MessageDTO messageDTO, MessageAttachment attachment) {
+        String content = messageDTO.getContent();
+        if ((content == null || content.isBlank()) && attachment != null) {
+            return attachment.getFileName();
+        }
+        if (content != null && content.length() > maxContentLength) {
+            throw new InvalidMessageException("Message content exceeds " + maxContentLength + " characters");
+        }
+        return content;
+    }
+
+    private Message.MessageType messageTypeOf(MessageDTO messageDTO, MessageAttachment attachment) {
+        if (attachment != null) {
+            return attachment.getContentType().startsWith("image/") ? Message.MessageType.IMAGE : Message.MessageType.FILE;
+        }
+        // IMAGE and FILE require an uploaded attachment
+        Message.MessageType type = messageDTO.getMessageType();
+        return type == null || type == Message.MessageType.IMAGE || type == Message.MessageType.FILE
+                ? Message.MessageType.TEXT : type;
+    }
+
     public List<MessageDTO> getRoomMessages(String roomId, int page, int size) {
         // Try to get from cache first (only for first page)
         if (page == 0) {
             List<MessageDTO> cachedMessages = getCachedRoomMessages(roomId);
+            messageMetrics.cacheResult(MessageMetrics.Cache.ROOM_MESSAGES, !cachedMessages.isEmpty());
             if (!cachedMessages.isEmpty()) {
                 log.debug("Returning cached messages for room {}", roomId);
                 return cachedMessages;
@@ -120,10 +177,53 @@ public class MessageService {
         return messages;
     }
 
+    /**
+     * Cached room messages with a sequence number above {@code afterSeq},
+     * oldest first, or null if the cache doesn't hold every one of them up
+     * to the room's current sequence number.
+     */
+    public List<MessageDTO> getCachedRoomMessagesAfter(String roomId, long afterSeq) {
+        List<MessageDTO> cached = getCachedRoomMessages(roomId);
+        if (cached.isEmpty()) {
+            return null;
+        }
+        List<MessageDTO> missed = cached.stream()
+                .filter(m -> m.getSeq() != null && m.getSeq() > afterSeq)
+                .sorted(Comparator.comparing(MessageDTO::getSeq))
+                .collect(Collectors.toList());
+        // The window must reach back to afterSeq and have no holes
+        long expected = afterSeq + 1;
+        for (MessageDTO message : missed) {
+            if (message.getSeq() != expected++) {
+                return null;
+            }
+        }
+        boolean reachesBack = cached.stream().anyMatch(m -> m.getSeq() != null && m.getSeq() <= afterSeq + 1);
+        if (!reachesBack) {
+            return null;
+        }
+        // Cache writes can fail silently, so a missing tail is only ruled out
+        // when the cache holds the room's latest sequence number
+        long highestCached = missed.isEmpty() ? afterSeq : missed.get(missed.size() - 1).getSeq();
+        return highestCached >= roomSequenceService.current(roomId) ? missed : null;
+    }
+
+    /**
+     * Stored room messages with a sequence number above {@code afterSeq},
+     * oldest first, at most {@code limit}.
+     */
+    public List<MessageDTO> getStoredRoomMessagesAfter(String roomId, long afterSeq, int limit) {
+        return messageRepository.findByChatRoomIdAndSeqGreaterThanOrderBySeqAsc(roomId, afterSeq, PageRequest.of(0, limit))
+                .stream()
+                .map(MessageDTO::fromEntity)
+                .collect(Collectors.toList());
+    }
+
     public List<MessageDTO> getPrivateMessages(String userId1, String userId2, int page, int size) {
         // Try to get from cache first (only for first page)
         if (page == 0) {
             List<MessageDTO> cachedMessages = getCachedPrivateMessages(userId1, userId2);
+            messageMetrics.cacheResult(MessageMetrics.Cache.PRIVATE_MESSAGES, !cachedMessages.isEmpty());
             if (!cachedMessages.isEmpty()) {
                 log.debug("Returning cached private messages between {} and {}", userId1, userId2);
                 return cachedMessages;
@@ -0,0 +1,374 @@
+package com.chatty.service;
+
+import com.chatty.entity.User;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which users are connected, across all nodes.
+ *
+ * Locally each node keeps a session -> user map and its reverse index, so a
+ * user is online on this node for as long as at least one of their sessions
+ * is open. Cluster-wide state lives in Redis:
+ *
+ * <pre>
+ * presence:online           zset  username scored by last heartbeat (ms)
+ * presence:user:{username}  hash  nodeId -> last heartbeat (ms)
+ * </pre>
+ *
+ * Every node refreshes its entries on a heartbeat, so entries of a crashed
+ * node age out. Whichever node prunes an aged-out user treats it as that
+ * user going offline: it publishes an {@link UsersExpiredEvent} for the
+ * presence broadcaster and queues the Mongo status update. Mongo
+ * {@code status}/{@code lastSeen} are written in batches off the
+ * connect/disconnect path.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PresenceService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${presence.heartbeat-ttl-ms:30000}")
+    private long heartbeatTtlMs;
+
+    @Value("${presence.snapshot-cache-ms:1000}")
+    private long snapshotCacheMs;
+
+    private static final String ONLINE_KEY = "presence:online";
+    private static final String USER_KEY = "presence:user:%s";
+
+    // KEYS[1] user hash, KEYS[2] online zset; ARGV nodeId, now, ttl, username, cutoff
+    private static final RedisScript<Long> CONNECT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3])\n" +
+            "local previous = redis.call('ZSCORE', KEYS[2], ARGV[4])\n" +
+            "redis.call('ZADD', KEYS[2], ARGV[2], ARGV[4])\n" +
+            "if previous and tonumber(previous) >= tonumber(ARGV[5]) then return 0 end\n" +
+            "return 1",
+            Long.class);
+
+    // KEYS[1] user hash, KEYS[2] online zset; ARGV nodeId, cutoff, username
+    private static final RedisScript<Long> DISCONNECT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HDEL', KEYS[1], ARGV[1])\n" +
+            "local nodes = redis.call('HGETALL', KEYS[1])\n" +
+            "for i = 2, #nodes, 2 do\n" +
+            "  if tonumber(nodes[i]) >= tonumber(ARGV[2]) then return 0 end\n" +
+            "end\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "redis.call('ZREM', KEYS[2], ARGV[3])\n" +
+            "return 1",
+            Long.class);
+
+    // KEYS[1] online zset; ARGV cutoff. Removes and returns aged-out users, so each is pruned by one node
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> PRUNE_SCRIPT = new DefaultRedisScript<>(
+            "local stale = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1])\n" +
+            "if #stale > 0 then redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1]) end\n" +
+            "return stale",
+            List.class);
+
+    /**
+     * Users whose presence aged out because their node stopped heartbeating.
+     */
+    public record UsersExpiredEvent(List<String> usernames) {
+    }
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // sessionId -> username, and the reverse index username -> sessionIds
+    private final Map<String, String> sessionUsers = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+
+    // Status changes waiting for the next batched Mongo write
+    private final Map<String, PendingStatus> pendingStatus = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptySet(), 0);
+
+    /**
+     * Registers a new session. Returns true if this made the user online
+     * cluster-wide (first session on any node).
+     */
+    public boolean connect(String sessionId, String username) {
+        if (sessionUsers.putIfAbsent(sessionId, username) != null) {
+            return false;
+        }
+
+        boolean[] firstLocalSession = new boolean[1];
+        userSessions.compute(username, (user, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                firstLocalSession[0] = true;
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+
+        if (!firstLocalSession[0]) {
+            return false;
+        }
+
+        boolean cameOnline = publishConnect(username);
+        if (cameOnline) {
+            pendingStatus.put(username, new PendingStatus(User.UserStatus.ONLINE, LocalDateTime.now()));
+        }
+        return cameOnline;
+    }
+
+    /**
+     * Removes a session. Returns the username if this made the user offline
+     * cluster-wide (last session on every node), otherwise null.
+     */
+    public String disconnect(String sessionId) {
+        String username = sessionUsers.remove(sessionId);
+        if (username == null) {
+            return null;
+        }
+
+        boolean[] lastLocalSession = new boolean[1];
+        userSessions.computeIfPresent(username, (user, sessions) -> {
+            sessions.remove(sessionId);
+            if (sessions.isEmpty()) {
+                lastLocalSession[0] = true;
+                return null;
+            }
+            return sessions;
+        });
+
+        if (!lastLocalSession[0]) {
+            return null;
+        }
+
+        boolean wentOffline = publishDisconnect(username);
+
+        // A new local session may have raced in while Redis was being updated
+        if (userSessions.containsKey(username)) {
+            publishConnect(username);
+            return null;
+        }
+
+        if (wentOffline) {
+            pendingStatus.put(username, new PendingStatus(User.UserStatus.OFFLINE, LocalDateTime.now()));
+            return username;
+        }
+        return null;
+    }
+
+    public boolean isUserOnline(String username) {
+        return userSessions.containsKey(username) || getOnlineUsernames().contains(username);
+    }
+
+    public int getSessionCount(String username) {
+        Set<String> sessions = userSessions.get(username);
+        return sessions != null ? sessions.size() : 0;
+    }
+
+    public Set<String> getLocalUsernames() {
+        return Set.copyOf(userSessions.keySet());
+    }
+
+    public boolean isLocalUser(String username) {
+        return userSessions.containsKey(username);
+    }
+
+    public Map<String, String> getLocalSessions() {
+        return Collections.unmodifiableMap(sessionUsers);
+    }
+
+    /**
+     * Usernames online anywhere in the cluster. Served from a short-lived
+     * local snapshot so frequent callers don't each hit Redis.
+     */
+    public Set<String> getOnlineUsernames() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (now - current.loadedAt() < snapshotCacheMs) {
+            return current.usernames();
+        }
+
+        try {
+            Set<String> online = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(ONLINE_KEY, now - heartbeatTtlMs, Double.POSITIVE_INFINITY);
+            Set<String> usernames = online != null ? Set.copyOf(online) : Collections.emptySet();
+            snapshot = new Snapshot(usernames, now);
+            return usernames;
+        } catch (Exception e) {
+            log.warn("Failed to read cluster presence, using local sessions: {}", e.getMessage());
+            return Set.copyOf(userSessions.keySet());
+        }
+    }
+
+    /**
+     * Refreshes this node's presence entries so they don't expire, and drops
+     * entries left behind by nodes that stopped heartbeating.
+     */
+    @Scheduled(fixedDelayString = "${presence.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        List<String> usernames = new ArrayList<>(userSessions.keySet());
+        long now = System.currentTimeMillis();
+
+        try {
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+                    for (String username : usernames) {
+                        String userKey = String.format(USER_KEY, username);
+                        ops.opsForHash().put(userKey, nodeId, String.valueOf(now));
+                        ops.expire(userKey, Duration.ofMillis(heartbeatTtlMs));
+                        tuples.add(ZSetOperations.TypedTuple.of(username, (double) now));
+                    }
+                    if (!tuples.isEmpty()) {
+                        ops.opsForZSet().add(ONLINE_KEY, tuples);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Presence heartbeat failed: {}", e.getMessage());
+        }
+        pruneExpired(now);
+    }
+
+    /**
+     * Drops users whose last heartbeat is older than the TTL, and reports
+     * them as gone offline.
+     */
+    @SuppressWarnings("unchecked")
+    private void pruneExpired(long now) {
+        List<String> expired;
+        try {
+            expired = stringRedisTemplate.execute(PRUNE_SCRIPT, List.of(ONLINE_KEY), String.valueOf(now - heartbeatTtlMs));
+        } catch (Exception e) {
+            log.warn("Failed to prune expired presence: {}", e.getMessage());
+            return;
+        }
+        if (expired == null || expired.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime at = LocalDateTime.now();
+        for (String username : expired) {
+            pendingStatus.put(username, new PendingStatus(User.UserStatus.OFFLINE, at));
+        }
+        log.info("Pruned {} users left online by nodes that stopped heartbeating", expired.size());
+        eventPublisher.publishEvent(new UsersExpiredEvent(expired));
+    }
+
+    /**
+     * Writes pending status/lastSeen changes to Mongo in one bulk operation.
+     * If the write fails the changes go back into the pending map, unless a
+     * newer change for the same user arrived meanwhile, and are retried on
+     * the next flush.
+     */
+    @Scheduled(fixedDelayString = "${presence.flush-interval-ms:5000}")
+    public void flushStatusUpdates() {
+        if (pendingStatus.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        Map<String, PendingStatus> flushed = new HashMap<>();
+        for (String username : new ArrayList<>(pendingStatus.keySet())) {
+            PendingStatus pending = pendingStatus.remove(username);
+            if (pending == null) {
+                continue;
+            }
+            bulkOps.updateOne(
+                    Query.query(Criteria.where("username").is(username)),
+                    new Update().set("status", pending.status()).set("lastSeen", pending.at()));
+            flushed.put(username, pending);
+        }
+
+        if (!flushed.isEmpty()) {
+            try {
+                bulkOps.execute();
+                log.debug("Flushed {} presence status updates", flushed.size());
+            } catch (Exception e) {
+                log.warn("Failed to flush {} presence status updates, will retry: {}", flushed.size(), e.getMessage());
+                flushed.forEach((username, failed) -> pendingStatus.merge(username, failed,
+                        (current, retry) -> retry.at().isAfter(current.at()) ? retry : current));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Leave the cluster cleanly instead of waiting for heartbeats to expire
+        for (String username : new ArrayList<>(userSessions.keySet())) {
+            if (publishDisconnect(username)) {
+                pendingStatus.put(username, new PendingStatus(User.UserStatus.OFFLINE, LocalDateTime.now()));
+            }
+        }
+        flushStatusUpdates();
+    }
+
+    private boolean publishConnect(String username) {
+        long now = System.currentTimeMillis();
+        try {
+            Long result = stringRedisTemplate.execute(
+                    CONNECT_SCRIPT,
+                    List.of(String.format(USER_KEY, username), ONLINE_KEY),
+                    nodeId, String.valueOf(now), String.valueOf(heartbeatTtlMs), username,
+                    String.valueOf(now - heartbeatTtlMs));
+            return result == null || result == 1L;
+        } catch (Exception e) {
+            log.warn("Failed to publish presence for {}: {}", username, e.getMessage());
+            return true;
+        }
+    }
+
+    private boolean publishDisconnect(String username) {
+        long now = System.currentTimeMillis();
+        try {
+            Long result = stringRedisTemplate.execute(
+                    DISCONNECT_SCRIPT,
+                    List.of(String.format(USER_KEY, username), ONLINE_KEY),
+                    nodeId, String.valueOf(now - heartbeatTtlMs), username);
+            return result == null || result == 1L;
+        } catch (Exception e) {
+            log.warn("Failed to publish disconnect for {}: {}", username, e.getMessage());
+            return true;
+        }
+    }
+
+    private record PendingStatus(User.UserStatus status, LocalDateTime at) {
+    }
+
+    private record Snapshot(Set<String> usernames, long loadedAt) {
+    }
+}
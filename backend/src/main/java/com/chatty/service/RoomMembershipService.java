@@ -0,0 +1,308 @@
+package com.chatty.service;
+
+import com.chatty.dao.RoomMembershipRepository;
+import com.chatty.dto.MembershipEventDTO;
+import com.chatty.entity.ChatRoom;
+import com.chatty.entity.RoomMembership;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Room membership, stored one document per (roomId, userId) in
+ * {@code room_memberships}.
+ *
+ * Membership checks are served from an in-process per-room set of member
+ * ids. A room's set is loaded on its first check and then kept current from
+ * join/leave events, which every node exchanges over Redis pub/sub and
+ * republishes locally as {@link MembershipEventDTO} application events. Sets
+ * are also reloaded after a TTL in case an event was missed. A loaded set is
+ * only installed if no join/leave for the room was applied while it was
+ * being read, so a load can't overwrite a change it didn't see.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RoomMembershipService implements MessageListener {
+
+    private final RoomMembershipRepository membershipRepository;
+    private final MongoTemplate mongoTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${membership.cache.max-rooms:1000}")
+    private int maxCachedRooms;
+
+    @Value("${membership.cache.ttl-ms:300000}")
+    private long cacheTtlMs;
+
+    @Value("${membership.channel:membership:events}")
+    private String membershipChannel;
+
+    @Value("${membership.migrate-embedded-members:true}")
+    private boolean migrateEmbeddedMembers;
+
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String EMBEDDED_MEMBERS_MIGRATION = "room-memberships-from-embedded-members";
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // roomId -> member ids
+    private final Map<String, CachedMembers> membersByRoom = new ConcurrentHashMap<>();
+
+    // roomId -> join/leave events applied so far, to detect events racing a load
+    private final Map<String, Long> changeCounts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(membershipChannel));
+        if (migrateEmbeddedMembers) {
+            migrateEmbeddedMembersOnce();
+        }
+    }
+
+    /**
+     * Adds the user to the room. Returns false if they already were a member.
+     */
+    public boolean join(String roomId, String userId) {
+        try {
+            membershipRepository.insert(RoomMembership.builder()
+                    .roomId(roomId)
+                    .userId(userId)
+                    .joinedAt(LocalDateTime.now())
+                    .build());
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+        publish(new MembershipEventDTO(roomId, userId, true, nodeId));
+        return true;
+    }
+
+    /**
+     * Removes the user from the room. Returns false if they weren't a member.
+     */
+    public boolean leave(String roomId, String userId) {
+        if (membershipRepository.deleteByRoomIdAndUserId(roomId, userId) == 0) {
+            return false;
+        }
+        publish(new MembershipEventDTO(roomId, userId, false, nodeId));
+        return true;
+    }
+
+    public boolean isMember(String roomId, String userId) {
+        return cachedMembers(roomId).userIds().contains(userId);
+    }
+
+    public List<String> getRoomIds(String userId) {
+        Query query = Query.query(Criteria.where("userId").is(userId));
+        query.fields().include("roomId");
+        return mongoTemplate.find(query, RoomMembership.class).stream()
+                .map(RoomMembership::getRoomId)
+                .toList();
+    }
+
+    /**
+     * Up to {@code limit} member ids of the room, ordered by user id, starting
+     * after {@code afterUserId} (null for the first page).
+     */
+    public List<String> getMemberIds(String roomId, String afterUserId, int limit) {
+        Criteria criteria = Criteria.where("roomId").is(roomId);
+        if (afterUserId != null) {
+            criteria = criteria.and("userId").gt(afterUserId);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "userId"))
+                .limit(limit);
+        query.fields().include("userId");
+        return mongoTemplate.find(query, RoomMembership.class).stream()
+                .map(RoomMembership::getUserId)
+                .toList();
+    }
+
+    /**
+     * Distinct member ids across the given rooms.
+     */
+    public List<String> getMemberIds(Collection<String> roomIds) {
+        if (roomIds.isEmpty()) {
+            return List.of();
+        }
+        return mongoTemplate.findDistinct(
+                Query.query(Criteria.where("roomId").in(roomIds)),
+                "userId", RoomMembership.class, String.class);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            MembershipEventDTO event = objectMapper.readValue(message.getBody(), MembershipEventDTO.class);
+            if (!nodeId.equals(event.getOrigin())) {
+                apply(event);
+            }
+        } catch (Exception e) {
+            log.error("Failed to handle membership event: {}", e.getMessage());
+        }
+    }
+
+    private void publish(MembershipEventDTO event) {
+        // Apply locally first so this node reads its own writes
+        apply(event);
+        try {
+            stringRedisTemplate.convertAndSend(membershipChannel, objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            log.warn("Failed to publish membership event: {}", e.getMessage());
+        }
+    }
+
+    private void apply(MembershipEventDTO event) {
+        // Counted under the room's map entry lock, the same lock a load installs under
+        membersByRoom.compute(event.getRoomId(), (roomId, cached) -> {
+            changeCounts.merge(roomId, 1L, Long::sum);
+            if (cached != null) {
+                if (event.isJoined()) {
+                    cached.userIds().add(event.getUserId());
+                } else {
+                    cached.userIds().remove(event.getUserId());
+                }
+            }
+            return cached;
+        });
+        eventPublisher.publishEvent(event);
+    }
+
+    private CachedMembers cachedMembers(String roomId) {
+        CachedMembers cached = membersByRoom.get(roomId);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < cacheTtlMs) {
+            return cached;
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            long changesBefore = changeCounts.getOrDefault(roomId, 0L);
+            CachedMembers loaded = new CachedMembers(loadMembers(roomId), now);
+            // An event applied during the load may be missing from it: read again instead
+            CachedMembers installed = membersByRoom.compute(roomId, (id, current) ->
+                    changeCounts.getOrDefault(id, 0L) == changesBefore ? loaded : current);
+            if (installed == loaded) {
+                if (membersByRoom.size() > maxCachedRooms) {
+                    evictOldest();
+                }
+                return loaded;
+            }
+            if (attempt == MAX_LOAD_ATTEMPTS) {
+                // Room is churning; answer from this read without caching it
+                return loaded;
+            }
+        }
+    }
+
+    private Set<String> loadMembers(String roomId) {
+        Set<String> userIds = ConcurrentHashMap.newKeySet();
+        Query query = Query.query(Criteria.where("roomId").is(roomId));
+        query.fields().include("userId");
+        try (Stream<RoomMembership> memberships = mongoTemplate.stream(query, RoomMembership.class)) {
+            memberships.forEach(membership -> userIds.add(membership.getUserId()));
+        }
+        return userIds;
+    }
+
+    private void evictOldest() {
+        membersByRoom.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().loadedAt()))
+                .ifPresent(entry -> membersByRoom.remove(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Runs {@link #migrateEmbeddedMembers()} on one node only. The node that
+     * inserts the marker document into {@code migrations} runs it; the others
+     * see the duplicate key and skip. The marker is removed again if the
+     * migration fails, so the next startup retries. The migration is
+     * idempotent, so a retry after a partial run is safe.
+     */
+    private void migrateEmbeddedMembersOnce() {
+        Document marker = new Document("_id", EMBEDDED_MEMBERS_MIGRATION)
+                .append("node", nodeId)
+                .append("startedAt", new Date());
+        try {
+            mongoTemplate.insert(marker, MIGRATIONS_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            log.debug("Embedded member migration already run or running on another node");
+            return;
+        }
+        try {
+            migrateEmbeddedMembers();
+        } catch (RuntimeException e) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(EMBEDDED_MEMBERS_MIGRATION)), MIGRATIONS_COLLECTION);
+            throw e;
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(EMBEDDED_MEMBERS_MIGRATION)),
+                new Update().currentDate("completedAt"), MIGRATIONS_COLLECTION);
+    }
+
+    /**
+     * Moves member lists still embedded in chat_rooms documents into
+     * room_memberships and replaces them with a member count.
+     */
+    private void migrateEmbeddedMembers() {
+        Query query = Query.query(Criteria.where("memberIds").exists(true));
+        query.fields().include("memberIds");
+        List<Document> rooms = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(ChatRoom.class));
+        for (Document room : rooms) {
+            String roomId = String.valueOf(room.get("_id"));
+            List<String> memberIds = room.getList("memberIds", String.class, List.of());
+
+            if (!memberIds.isEmpty()) {
+                BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RoomMembership.class);
+                LocalDateTime now = LocalDateTime.now();
+                for (String userId : memberIds) {
+                    bulkOps.upsert(
+                            Query.query(Criteria.where("roomId").is(roomId).and("userId").is(userId)),
+                            new Update().setOnInsert("joinedAt", now));
+                }
+                bulkOps.execute();
+            }
+
+            int memberCount = (int) mongoTemplate.count(Query.query(Criteria.where("roomId").is(roomId)), RoomMembership.class);
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(room.get("_id"))),
+                    new Update().unset("memberIds").set("memberCount", memberCount),
+                    ChatRoom.class);
+        }
+        if (!rooms.isEmpty()) {
+            log.info("Migrated embedded members of {} chat rooms to room_memberships", rooms.size());
+        }
+    }
+
+    private record CachedMembers(Set<String> userIds, long loadedAt) {
+    }
+}
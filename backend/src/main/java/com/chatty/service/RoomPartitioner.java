@@ -0,0 +1,103 @@
+package com.chatty.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the Kafka partition for room messages.
+ *
+ * Room messages are keyed by room id, which normally pins each room to one
+ * partition and one consumer thread. When {@code kafka.hot-rooms.enabled} is
+ * on, a room that sent at least {@code threshold-per-second} messages through
+ * this node in the last second is spread explicitly over
+ * {@code (base + seq % spread) % partitions}, where base is the partition the
+ * key hashes to. Choosing the partition here rather than varying the key
+ * guarantees the spread; hashed sub-keys can collide on one partition.
+ * Consumers put the room back in order by sequence number (see
+ * {@link RoomReorderBuffer}), whatever the partition was.
+ *
+ * To roll out, deploy with the flag off (consumers already reorder by
+ * sequence), then turn it on; turning it off again is equally safe. Only
+ * worth turning on where each node consumes every partition; see
+ * {@link RoomReorderBuffer} for the shared consumer group.
+ */
+@Component
+@RequiredArgsConstructor
+public class RoomPartitioner {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${kafka.hot-rooms.enabled:false}")
+    private boolean enabled;
+
+    @Value("${kafka.hot-rooms.threshold-per-second:50}")
+    private int thresholdPerSecond;
+
+    // Partitions per hot room; capped by the topic's partition count
+    @Value("${kafka.hot-rooms.spread:4}")
+    private int spread;
+
+    @Value("${kafka.partitions:3}")
+    private int partitions;
+
+    // roomId -> messages in the current window
+    private final Map<String, AtomicInteger> currentCounts = new ConcurrentHashMap<>();
+    private volatile Set<String> hotRooms = Set.of();
+
+    private Counter spreadCounter;
+
+    @PostConstruct
+    public void init() {
+        spreadCounter = Counter.builder("chatty.kafka.hot-room.spread")
+                .description("Room messages keyed across partitions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The partition for a room message, or null to leave it to the key.
+     */
+    public Integer partitionFor(String roomId, Long seq) {
+        if (!enabled || seq == null) {
+            return null;
+        }
+        currentCounts.computeIfAbsent(roomId, id -> new AtomicInteger()).incrementAndGet();
+        if (!hotRooms.contains(roomId) || partitions < 2) {
+            return null;
+        }
+        spreadCounter.increment();
+        // The partition the default partitioner would pick for the key
+        int base = Utils.toPositive(Utils.murmur2(roomId.getBytes(StandardCharsets.UTF_8))) % partitions;
+        return (int) ((base + Math.floorMod(seq, (long) Math.min(spread, partitions))) % partitions);
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void rollWindow() {
+        if (!enabled) {
+            return;
+        }
+        Set<String> hot = new HashSet<>();
+        currentCounts.forEach((roomId, count) -> {
+            int messages = count.getAndSet(0);
+            if (messages >= thresholdPerSecond) {
+                hot.add(roomId);
+            }
+            if (messages == 0) {
+                currentCounts.remove(roomId, count);
+            }
+        });
+        hotRooms = hot;
+    }
+}
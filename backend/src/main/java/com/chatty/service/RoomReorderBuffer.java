@@ -0,0 +1,186 @@
+package com.chatty.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Restores per-room sequence order for room messages consumed from Kafka.
+ *
+ * A hot room's messages are spread over several partitions (see
+ * {@link RoomPartitioner}) and consumed by several threads, and even with one
+ * key per room, two ingress nodes can produce a room's messages out of
+ * sequence order. Each room tracks the next expected sequence number;
+ * messages ahead of it are held until the gap fills.
+ *
+ * A gap can be permanent (a message dead-lettered, or consumed by another
+ * node of the group), so a gap older than {@code kafka.reorder.max-delay-ms}
+ * is skipped and the held messages are released in order. Late messages
+ * behind the expected number are dispatched straight away, as are messages
+ * without a sequence number. Gaps are swept on a thread of their own, so
+ * other scheduled jobs can't hold held messages back.
+ *
+ * The buffer only sees the partitions assigned to this node. With the shared
+ * consumer group and more than one node, a hot room spread over several
+ * partitions is consumed by several nodes, each missing the others'
+ * sequence numbers, so nearly every message waits out the max delay. Keep
+ * {@code kafka.hot-rooms.enabled} off in that setup.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoomReorderBuffer {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${kafka.reorder.max-delay-ms:50}")
+    private long maxDelayMs;
+
+    // Held messages per room before the oldest gap is skipped regardless of age
+    @Value("${kafka.reorder.max-buffered:500}")
+    private int maxBuffered;
+
+    @Value("${kafka.reorder.idle-ttl-ms:300000}")
+    private long idleTtlMs;
+
+    @Value("${kafka.reorder.sweep-interval-ms:10}")
+    private long sweepIntervalMs;
+
+    private ScheduledExecutorService sweeper;
+
+    private final Map<String, RoomState> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+
+    private Counter inOrder;
+    private Counter held;
+    private Counter late;
+    private Counter skipped;
+
+    @PostConstruct
+    public void init() {
+        inOrder = counter("in_order");
+        held = counter("buffered");
+        late = counter("late");
+        skipped = counter("gap_skipped");
+        Gauge.builder("chatty.messages.reorder.buffered", buffered, AtomicInteger::get)
+                .description("Room messages held back waiting for an earlier sequence number")
+                .register(meterRegistry);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("reorder-sweep-"));
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Runs {@code dispatch} once every message before {@code seq} in the
+     * room has been dispatched or given up on. Dispatches for a room are
+     * never run concurrently.
+     */
+    public void submit(String roomId, Long seq, Runnable dispatch) {
+        if (seq == null || roomId == null) {
+            dispatch.run();
+            return;
+        }
+        RoomState state = rooms.computeIfAbsent(roomId, id -> new RoomState());
+        synchronized (state) {
+            long now = System.currentTimeMillis();
+            state.lastActivity = now;
+            if (state.nextSeq == 0) {
+                // First message seen for the room on this node
+                state.nextSeq = seq + 1;
+                inOrder.increment();
+                dispatch.run();
+            } else if (seq < state.nextSeq) {
+                late.increment();
+                dispatch.run();
+            } else if (seq == state.nextSeq) {
+                state.nextSeq++;
+                inOrder.increment();
+                dispatch.run();
+                drain(state);
+            } else {
+                if (state.pending.isEmpty()) {
+                    state.gapSince = now;
+                }
+                if (state.pending.putIfAbsent(seq, dispatch) == null) {
+                    held.increment();
+                    buffered.incrementAndGet();
+                }
+                if (state.pending.size() > maxBuffered || now - state.gapSince >= maxDelayMs) {
+                    skipGap(roomId, state, now);
+                }
+            }
+        }
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        rooms.forEach((roomId, state) -> {
+            synchronized (state) {
+                try {
+                    if (!state.pending.isEmpty() && now - state.gapSince >= maxDelayMs) {
+                        skipGap(roomId, state, now);
+                    } else if (state.pending.isEmpty() && now - state.lastActivity >= idleTtlMs) {
+                        rooms.remove(roomId, state);
+                    }
+                } catch (Exception e) {
+                    // An uncaught exception would cancel the sweep for good
+                    log.warn("Reorder sweep failed for room {}: {}", roomId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void skipGap(String roomId, RoomState state, long now) {
+        long first = state.pending.firstKey();
+        log.debug("Skipping sequence gap {}..{} in room {}", state.nextSeq, first - 1, roomId);
+        skipped.increment();
+        state.nextSeq = first;
+        drain(state);
+        if (!state.pending.isEmpty()) {
+            state.gapSince = now;
+        }
+    }
+
+    private void drain(RoomState state) {
+        Runnable next;
+        while ((next = state.pending.remove(state.nextSeq)) != null) {
+            buffered.decrementAndGet();
+            state.nextSeq++;
+            next.run();
+        }
+    }
+
+    private Counter counter(String outcome) {
+        return Counter.builder("chatty.messages.reorder")
+                .description("Room messages by reordering outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static class RoomState {
+        long nextSeq;
+        long gapSince;
+        long lastActivity;
+        final TreeMap<Long, Runnable> pending = new TreeMap<>();
+    }
+}
@@ -0,0 +1,67 @@
+package com.chatty.service;
+
+import com.chatty.entity.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Per-room message sequence numbers, strictly increasing across all nodes.
+ *
+ * The counter lives in Redis and is incremented once per message. If the
+ * key is missing (first message, or Redis lost it) it is seeded from the
+ * highest sequence stored in Mongo before incrementing, so numbers never go
+ * backwards.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RoomSequenceService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MongoTemplate mongoTemplate;
+
+    private static final String SEQUENCE_KEY = "chat:room:%s:seq";
+
+    // INCR only if the counter exists; nil tells the caller to seed it first
+    private static final DefaultRedisScript<Long> INCREMENT_IF_EXISTS = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return nil end return redis.call('INCR', KEYS[1])",
+            Long.class);
+
+    public long next(String roomId) {
+        String key = String.format(SEQUENCE_KEY, roomId);
+        Long seq = stringRedisTemplate.execute(INCREMENT_IF_EXISTS, List.of(key));
+        if (seq != null) {
+            return seq;
+        }
+        // Seed only if still missing, so concurrent seeders agree
+        stringRedisTemplate.opsForValue().setIfAbsent(key, String.valueOf(highestStored(roomId)));
+        log.debug("Seeded sequence for room {}", roomId);
+        return stringRedisTemplate.opsForValue().increment(key);
+    }
+
+    /**
+     * The last sequence number issued for the room, or 0 if none.
+     */
+    public long current(String roomId) {
+        String value = stringRedisTemplate.opsForValue().get(String.format(SEQUENCE_KEY, roomId));
+        return value != null ? Long.parseLong(value) : highestStored(roomId);
+    }
+
+    private long highestStored(String roomId) {
+        Query query = Query.query(Criteria.where("chatRoomId").is(roomId).and("seq").ne(null))
+                .with(Sort.by(Sort.Direction.DESC, "seq"))
+                .limit(1);
+        query.fields().include("seq");
+        Message latest = mongoTemplate.findOne(query, Message.class);
+        return latest != null ? latest.getSeq() : 0;
+    }
+}
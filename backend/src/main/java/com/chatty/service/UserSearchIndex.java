@@ -0,0 +1,215 @@
+package com.chatty.service;
+
+import com.chatty.dto.AuthResponse;
+import com.chatty.dto.UserProfileEventDTO;
+import com.chatty.entity.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory typeahead over usernames and display names.
+ *
+ * Every user is indexed under their lowercased username, display name and
+ * each word of the display name, in a sorted map keyed "term\0userId". A
+ * prefix query is a sub-map range scan, so it costs O(log n + limit)
+ * however many users there are. The index is loaded once at startup and
+ * then updated incrementally from profile events, which nodes exchange
+ * over Redis pub/sub and republish locally as {@link UserProfileEventDTO}
+ * application events. Until the load finishes, queries fall back to Mongo.
+ * Entries carry the user's profileVersion and are never replaced by an older
+ * one, so a row the startup load read before a concurrent profile change
+ * can't overwrite that change's event, and events arriving out of order
+ * can't either.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserSearchIndex implements MessageListener {
+
+    private final MongoTemplate mongoTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${users.channel:users:events}")
+    private String usersChannel;
+
+    private static final char TERM_SEPARATOR = '\0';
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // "term\0userId" -> entry, and userId -> entry for replacing a user's terms
+    private final ConcurrentSkipListMap<String, Entry> byTerm = new ConcurrentSkipListMap<>();
+    private final Map<String, Entry> byUserId = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(usersChannel));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        Query query = new Query();
+        query.fields().include("username", "displayName", "profilePicture", "profileVersion");
+        try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+            users.forEach(user -> index(new Entry(user.getId(), user.getUsername(),
+                    user.getDisplayName(), user.getProfilePicture(), user.getProfileVersion())));
+        }
+        loaded = true;
+        log.info("Indexed {} users for search in {} ms", byUserId.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Users whose username, display name or a word of it starts with the
+     * query, case-insensitively.
+     */
+    public List<AuthResponse.UserDTO> search(String prefix, int limit) {
+        String term = prefix.trim().toLowerCase(Locale.ROOT);
+        if (term.isEmpty()) {
+            return List.of();
+        }
+        if (!loaded) {
+            return searchMongo(term, limit);
+        }
+
+        // One user can match under several terms; keep the first hit
+        Set<Entry> matches = new LinkedHashSet<>();
+        ConcurrentNavigableMap<String, Entry> range = byTerm.subMap(term, true, term + Character.MAX_VALUE, false);
+        for (Entry entry : range.values()) {
+            matches.add(entry);
+            if (matches.size() >= limit) {
+                break;
+            }
+        }
+        return matches.stream().map(Entry::toDTO).toList();
+    }
+
+    /**
+     * Re-indexes the user here and on every other node. Call after signup or
+     * any change to username, display name or profile picture.
+     */
+    public void onProfileChanged(User user) {
+        UserProfileEventDTO event = new UserProfileEventDTO(user.getId(), user.getUsername(),
+                user.getDisplayName(), user.getProfilePicture(), user.getProfileVersion(), nodeId);
+        apply(event);
+        try {
+            stringRedisTemplate.convertAndSend(usersChannel, objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            log.warn("Failed to publish profile event: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            UserProfileEventDTO event = objectMapper.readValue(message.getBody(), UserProfileEventDTO.class);
+            if (!nodeId.equals(event.getOrigin())) {
+                apply(event);
+            }
+        } catch (Exception e) {
+            log.error("Failed to handle profile event: {}", e.getMessage());
+        }
+    }
+
+    private void apply(UserProfileEventDTO event) {
+        index(new Entry(event.getUserId(), event.getUsername(), event.getDisplayName(),
+                event.getProfilePicture(), event.getProfileVersion()));
+        eventPublisher.publishEvent(event);
+    }
+
+    private synchronized void index(Entry entry) {
+        Entry previous = byUserId.get(entry.id());
+        if (previous != null && previous.version() > entry.version()) {
+            // Already indexed from a newer profile
+            return;
+        }
+        byUserId.put(entry.id(), entry);
+        if (previous != null) {
+            for (String term : termsOf(previous)) {
+                byTerm.remove(term + TERM_SEPARATOR + previous.id());
+            }
+        }
+        for (String term : termsOf(entry)) {
+            byTerm.put(term + TERM_SEPARATOR + entry.id(), entry);
+        }
+    }
+
+    private static Set<String> termsOf(Entry entry) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (entry.username() != null) {
+            terms.add(entry.username().toLowerCase(Locale.ROOT));
+        }
+        if (entry.displayName() != null) {
+            String displayName = entry.displayName().trim().toLowerCase(Locale.ROOT);
+            if (!displayName.isEmpty()) {
+                terms.add(displayName);
+                for (String word : displayName.split("\\s+")) {
+                    terms.add(word);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private List<AuthResponse.UserDTO> searchMongo(String term, int limit) {
+        Pattern prefix = Pattern.compile("^" + Pattern.quote(term), Pattern.CASE_INSENSITIVE);
+        Query query = Query.query(new Criteria().orOperator(
+                        Criteria.where("username").regex(prefix),
+                        Criteria.where("displayName").regex(prefix)))
+                .with(Sort.by("username"))
+                .limit(limit);
+        query.fields().include("username", "displayName", "profilePicture");
+
+        List<AuthResponse.UserDTO> users = new ArrayList<>();
+        for (User user : mongoTemplate.find(query, User.class)) {
+            users.add(new Entry(user.getId(), user.getUsername(), user.getDisplayName(),
+                    user.getProfilePicture(), user.getProfileVersion()).toDTO());
+        }
+        return users;
+    }
+
+    private record Entry(String id, String username, String displayName, String profilePicture, long version) {
+
+        AuthResponse.UserDTO toDTO() {
+            return AuthResponse.UserDTO.builder()
+                    .id(id)
+                    .username(username)
+                    .displayName(displayName)
+                    .profilePicture(profilePicture)
+                    .build();
+        }
+    }
+}
@@ -2,15 +2,29 @@ package com.chatty.service;
 
 import com.chatty.dao.UserRepository;
 import com.chatty.dto.AuthResponse;
+import com.chatty.dto.UpdateProfileRequest;
+import com.chatty.dto.UserProfileDTO;
 import com.chatty.entity.User;
 import com.chatty.exception.UserNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -18,9 +32,35 @@ import java.util.stream.Collectors;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final PresenceService presenceService;
+    private final MongoTemplate mongoTemplate;
+    private final UserSearchIndex userSearchIndex;
 
-    public List<AuthResponse.UserDTO> getAllUsers() {
-        return userRepository.findAll().stream()
+    // Fields of a public user listing; never the password hash
+    private static final String[] DIRECTORY_FIELDS = {"username", "email", "displayName", "profilePicture"};
+
+    /**
+     * Feeds every user to the consumer straight off a Mongo cursor, ordered
+     * by id, without holding them all in memory.
+     */
+    public void streamUsers(Consumer<AuthResponse.UserDTO> consumer) {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "id"));
+        query.fields().include(DIRECTORY_FIELDS);
+        try (Stream<User> users = mongoTemplate.stream(query, User.class)) {
+            users.map(this::toUserDTO).forEach(consumer);
+        }
+    }
+
+    /**
+     * Up to {@code limit} users ordered by id, starting after
+     * {@code afterUserId} (null for the first page).
+     */
+    public List<AuthResponse.UserDTO> getUserPage(String afterUserId, int limit) {
+        Query query = (afterUserId != null ? Query.query(Criteria.where("id").gt(afterUserId)) : new Query())
+                .with(Sort.by(Sort.Direction.ASC, "id"))
+                .limit(limit);
+        query.fields().include(DIRECTORY_FIELDS);
+        return mongoTemplate.find(query, User.class).stream()
                 .map(this::toUserDTO)
                 .collect(Collectors.toList());
     }
@@ -37,12 +77,60 @@ public class UserService {
         return toUserDTO(user);
     }
 
+    /**
+     * Users with the given ids, in the same order; unknown ids are skipped.
+     */
+    public List<AuthResponse.UserDTO> getUsersByIds(List<String> userIds) {
+        Map<String, User> users = new HashMap<>();
+        Query query = Query.query(Criteria.where("id").in(userIds));
+        query.fields().include(DIRECTORY_FIELDS);
+        mongoTemplate.find(query, User.class).forEach(user -> users.put(user.getId(), user));
+        return userIds.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::toUserDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Public profiles of the given users, for resolving compact message frames.
+     */
+    public List<UserProfileDTO> getProfiles(List<String> userIds) {
+        Query query = Query.query(Criteria.where("id").in(userIds));
+        query.fields().include("username", "displayName", "profilePicture", "profileVersion");
+        return mongoTemplate.find(query, User.class).stream()
+                .map(user -> UserProfileDTO.builder()
+                        .id(user.getId())
+                        .username(user.getUsername())
+                        .displayName(user.getDisplayName())
+                        .profilePicture(user.getProfilePicture())
+                        .profileVersion(user.getProfileVersion())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
     public List<AuthResponse.UserDTO> getOnlineUsers() {
-        return userRepository.findByStatus(User.UserStatus.ONLINE).stream()
+        // Presence engine is the source of truth; Mongo status is only written lazily
+        Set<String> onlineUsernames = presenceService.getOnlineUsernames();
+        if (onlineUsernames.isEmpty()) {
+            return List.of();
+        }
+        return userRepository.findByUsernameIn(onlineUsernames).stream()
                 .map(this::toUserDTO)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Usernames of the users online that the user can see. Everyone shares
+     * the General room, so that is everyone online. Initial state for the
+     * diffs delivered on /topic/presence and /user/queue/presence.
+     */
+    public List<String> getVisiblePresence(String username) {
+        return presenceService.getOnlineUsernames().stream()
+                .filter(online -> !online.equals(username))
+                .collect(Collectors.toList());
+    }
+
     public void updateUserStatus(String userId, User.UserStatus status) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new UserNotFoundException("User not found with id: " + userId));
@@ -54,6 +142,28 @@ public class UserService {
         log.info("User {} status updated to {}", userId, status);
     }
 
+    /**
+     * Sets the given display name and/or profile picture and bumps the
+     * profile version, so clients holding the old profile refetch it.
+     */
+    public AuthResponse.UserDTO updateProfile(String username, UpdateProfileRequest request) {
+        Update update = new Update().inc("profileVersion", 1).set("updatedAt", LocalDateTime.now());
+        if (request.getDisplayName() != null) {
+            update.set("displayName", request.getDisplayName());
+        }
+        if (request.getProfilePicture() != null) {
+            update.set("profilePicture", request.getProfilePicture());
+        }
+        User user = mongoTemplate.findAndModify(Query.query(Criteria.where("username").is(username)), update,
+                FindAndModifyOptions.options().returnNew(true), User.class);
+        if (user == null) {
+            throw new UserNotFoundException("User not found with username: " + username);
+        }
+        userSearchIndex.onProfileChanged(user);
+        log.info("User {} updated their profile (version {})", username, user.getProfileVersion());
+        return toUserDTO(user);
+    }
+
     public User getUserEntityByUsername(String username) {
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new UserNotFoundException("User not found with username: " + username));
@@ -64,7 +174,7 @@ public class UserService {
                 .orElseThrow(() -> new UserNotFoundException("User not found with id: " + userId));
     }
 
-    private AuthResponse.UserDTO toUserDTO(User user) {
+    public AuthResponse.UserDTO toUserDTO(User user) {
         return AuthResponse.UserDTO.builder()
                 .id(user.getId())
                 .username(user.getUsername())
@@ -1,15 +1,21 @@
 package com.chatty.websocket;
 
+import com.chatty.dto.ApiResponse;
 import com.chatty.dto.MessageDTO;
 import com.chatty.entity.Message;
+import com.chatty.exception.InvalidMessageException;
+import com.chatty.service.DeliveryLatencyTracker;
 import com.chatty.service.KafkaMessageService;
+import com.chatty.service.MessageMetrics;
 import com.chatty.service.MessageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
@@ -21,6 +27,11 @@ public class ChatMessageHandler {
 
     private final MessageService messageService;
     private final KafkaMessageService kafkaMessageService;
+    private final TypingIndicatorService typingIndicatorService;
+    private final MessageMetrics messageMetrics;
+
+    // Optional client send time (epoch millis) on SEND frames, for latency tracking
+    private static final String SENT_AT_HEADER = "sent-at";
 
     /**
      * Handle public chat messages
@@ -31,20 +42,30 @@ public class ChatMessageHandler {
     public void handlePublicMessage(
             @DestinationVariable String roomId,
             @Payload MessageDTO messageDTO,
+            @Header(name = SENT_AT_HEADER, required = false) Long clientSentAt,
             Principal principal) {
         
+        long received = System.nanoTime();
+        long ingressAt = System.currentTimeMillis();
         log.debug("Received public message for room {} from user {}", roomId, principal.getName());
 
         messageDTO.setChatRoomId(roomId);
         
         // Save to MongoDB
         Message savedMessage = messageService.savePublicMessage(messageDTO, principal.getName());
+        DeliveryLatencyTracker.IngressTimes times = ingressTimes(clientSentAt, ingressAt);
         
         // Create response DTO with saved data
         MessageDTO responseDTO = MessageDTO.fromEntity(savedMessage);
         
         // Send to Kafka for distribution
-        kafkaMessageService.sendPublicMessage(responseDTO);
+        long sendStart = System.nanoTime();
+        kafkaMessageService.sendPublicMessage(responseDTO, times);
+        messageMetrics.record(false, MessageMetrics.Stage.KAFKA_SEND, sendStart);
+        messageMetrics.record(false, MessageMetrics.Stage.TOTAL, received);
+
+        // The sender is no longer typing
+        typingIndicatorService.stoppedTyping(roomId, principal.getName());
     }
 
     /**
@@ -56,8 +77,11 @@ public class ChatMessageHandler {
     public void handlePrivateMessage(
             @DestinationVariable String recipientId,
             @Payload MessageDTO messageDTO,
+            @Header(name = SENT_AT_HEADER, required = false) Long clientSentAt,
             Principal principal) {
         
+        long received = System.nanoTime();
+        long ingressAt = System.currentTimeMillis();
         log.debug("Received private message for user {} from user {}", recipientId, principal.getName());
 
         messageDTO.setRecipientId(recipientId);
@@ -65,32 +89,44 @@ public class ChatMessageHandler {
         
         // Save to MongoDB
         Message savedMessage = messageService.savePrivateMessage(messageDTO, principal.getName());
+        DeliveryLatencyTracker.IngressTimes times = ingressTimes(clientSentAt, ingressAt);
         
         // Create response DTO with saved data
         MessageDTO responseDTO = MessageDTO.fromEntity(savedMessage);
         
         // Send to Kafka for distribution
-        kafkaMessageService.sendPrivateMessage(responseDTO);
+        long sendStart = System.nanoTime();
+        kafkaMessageService.sendPrivateMessage(responseDTO, times);
+        messageMetrics.record(true, MessageMetrics.Stage.KAFKA_SEND, sendStart);
+        messageMetrics.record(true, MessageMetrics.Stage.TOTAL, received);
+    }
+
+    /**
+     * SEND frames rejected before anything was saved (e.g. oversized content)
+     * are reported to the sending session only. Once a message is saved it
+     * is never rejected: Kafka backpressure is retried by the publisher.
+     */
+    @MessageExceptionHandler(InvalidMessageException.class)
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public ApiResponse<Void> handleRejectedMessage(InvalidMessageException ex) {
+        log.warn("Rejected message: {}", ex.getMessage());
+        return ApiResponse.error(ex.getMessage());
+    }
+
+    private static DeliveryLatencyTracker.IngressTimes ingressTimes(Long clientSentAt, long ingressAt) {
+        return DeliveryLatencyTracker.IngressTimes.of(clientSentAt, ingressAt, System.currentTimeMillis());
     }
 
     /**
      * Handle typing indicator
      * Client sends to: /app/chat.typing.{roomId}
+     * Broadcasts to: /topic/typing.{roomId} (throttled, coalesced, never persisted)
      */
     @MessageMapping("/chat.typing.{roomId}")
     public void handleTypingIndicator(
             @DestinationVariable String roomId,
-            @Payload MessageDTO notification,
-            Principal principal,
-            SimpMessageHeaderAccessor headerAccessor) {
-        
-        log.debug("Typing indicator for room {} from user {}", roomId, principal.getName());
+            Principal principal) {
 
-        notification.setMessageType(Message.MessageType.SYSTEM);
-        notification.setChatRoomId(roomId);
-        notification.setSenderUsername(principal.getName());
-        
-        // Send notification through Kafka
-        kafkaMessageService.sendNotification(notification);
+        typingIndicatorService.typing(roomId, principal.getName());
     }
 }
@@ -0,0 +1,137 @@
+package com.chatty.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broker channel executor that shards dispatch across single-threaded lanes
+ * by destination hash.
+ *
+ * All messages for one destination (a room, or one session's user queue) run
+ * on the same lane, in the order they were sent, while different rooms
+ * dispatch in parallel. Client SUBSCRIBE frames don't come through here:
+ * they arrive on clientInboundChannel and are registered by the broker there.
+ * Only {@link #execute(Runnable)}, which is what the channel uses, is
+ * routed to the lanes. With virtual threads enabled each lane is a single
+ * virtual thread instead of a platform thread.
+ *
+ * Each lane queue is bounded. When a lane is full the publishing thread
+ * waits up to the offer timeout for room, which slows publishers down to
+ * the rate the lane drains at. If the lane is still full the message is
+ * rejected and the send fails with a MessageDeliveryException. Running the
+ * task on the caller instead would overtake the queued messages and break
+ * per-destination order, so that is not an option here.
+ */
+public class DestinationLaneExecutor extends ThreadPoolTaskExecutor {
+
+    private final int laneCount;
+    private final int laneQueueCapacity;
+    private final long offerTimeoutMs;
+    private boolean virtualThreads;
+    private MeterRegistry meterRegistry;
+    private Counter rejectedCounter;
+    private ThreadPoolExecutor[] lanes;
+
+    public DestinationLaneExecutor(int laneCount, int laneQueueCapacity, long offerTimeoutMs) {
+        this.laneCount = laneCount;
+        this.laneQueueCapacity = laneQueueCapacity;
+        this.offerTimeoutMs = offerTimeoutMs;
+        setThreadNamePrefix("broker-lane-");
+        setCorePoolSize(1);
+        setMaxPoolSize(1);
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory,
+                                                 RejectedExecutionHandler rejectedExecutionHandler) {
+        ThreadFactory laneThreadFactory = virtualThreads
+                ? new VirtualThreadTaskExecutor(getThreadNamePrefix()).getVirtualThreadFactory()
+                : threadFactory;
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneQueueCapacity), laneThreadFactory, this::waitForRoom);
+        }
+        if (meterRegistry != null) {
+            rejectedCounter = Counter.builder("chatty.websocket.broker.lane.rejected")
+                    .description("Broker messages rejected because their lane stayed full")
+                    .register(meterRegistry);
+            Gauge.builder("chatty.websocket.broker.lane.depth.max", this, DestinationLaneExecutor::maxLaneDepth)
+                    .description("Messages queued on the busiest broker dispatch lane")
+                    .register(meterRegistry);
+            Gauge.builder("chatty.websocket.broker.lane.queued", this, DestinationLaneExecutor::totalLaneDepth)
+                    .description("Messages queued across all broker dispatch lanes")
+                    .register(meterRegistry);
+        }
+        return super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        lanes[laneOf(task)].execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        if (lanes != null) {
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+        }
+        super.shutdown();
+    }
+
+    private void waitForRoom(Runnable task, ThreadPoolExecutor lane) {
+        try {
+            if (!lane.isShutdown() && lane.getQueue().offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (rejectedCounter != null) {
+            rejectedCounter.increment();
+        }
+        throw new RejectedExecutionException("Broker dispatch lane full (" + laneQueueCapacity + " queued)");
+    }
+
+    private double maxLaneDepth() {
+        return lanes == null ? 0 : Arrays.stream(lanes).mapToInt(lane -> lane.getQueue().size()).max().orElse(0);
+    }
+
+    private double totalLaneDepth() {
+        return lanes == null ? 0 : Arrays.stream(lanes).mapToInt(lane -> lane.getQueue().size()).sum();
+    }
+
+    private int laneOf(Runnable task) {
+        if (task instanceof MessageHandlingRunnable runnable) {
+            String destination = SimpMessageHeaderAccessor.getDestination(runnable.getMessage().getHeaders());
+            if (destination != null) {
+                return Math.floorMod(destination.hashCode(), laneCount);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.chatty.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Subscription registry for the in-process broker that indexes subscriptions
+ * by exact destination.
+ *
+ * Every destination the app uses is concrete ({@code /topic/public.{roomId}},
+ * {@code /topic/typing.{roomId}}, {@code /topic/notifications} and the
+ * per-session {@code /queue/...-user{sessionId}} destinations behind
+ * {@code /user/queue/...}), so there is no pattern matching. Finding the
+ * subscribers of a destination is a single map lookup, and its cost doesn't
+ * depend on how many other subscriptions the node holds.
+ *
+ * SUBSCRIBE and UNSUBSCRIBE frames arrive on clientInboundChannel, many at
+ * once during a reconnect storm. Each one updates its destination's
+ * session map in place, so it costs the same however many sessions already
+ * subscribe to the room. Dispatch iterates the live maps, which is safe
+ * under concurrent updates.
+ */
+@Slf4j
+@Component
+public class ExactDestinationSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> NO_SUBSCRIBERS =
+            CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+    // destination -> (sessionId -> subscriptionIds)
+    private final Map<String, Subscribers> subscribersByDestination = new ConcurrentHashMap<>();
+
+    // sessionId -> (subscriptionId -> destination)
+    private final Map<String, Map<String, String>> destinationsBySession = new ConcurrentHashMap<>();
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination,
+                                           Message<?> message) {
+        if (destination.indexOf('*') >= 0 || destination.indexOf('{') >= 0) {
+            log.warn("Ignoring pattern subscription {} from session {}", destination, sessionId);
+            return;
+        }
+
+        destinationsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        // All changes to a destination happen under its bin lock, so a concurrent
+        // removal can't drop the new entry
+        subscribersByDestination.compute(destination, (key, subscribers) -> {
+            Subscribers next = subscribers != null ? subscribers : new Subscribers();
+            List<String> ids = next.bySession.computeIfAbsent(sessionId, id -> new CopyOnWriteArrayList<>());
+            if (!ids.contains(subscriptionId)) {
+                ids.add(subscriptionId);
+            }
+            return next;
+        });
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> subscriptions = destinationsBySession.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            removeSubscriber(destination, sessionId, subscriptionId);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = destinationsBySession.remove(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        subscriptions.forEach((subscriptionId, destination) -> removeSubscriber(destination, sessionId, subscriptionId));
+    }
+
+    /**
+     * Drops a session's subscriptions to the given destinations, e.g. the
+     * room topics of a room its user just left.
+     */
+    public void removeSubscriptions(String sessionId, Collection<String> destinations) {
+        Map<String, String> subscriptions = destinationsBySession.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        subscriptions.entrySet().removeIf(subscription -> {
+            if (!destinations.contains(subscription.getValue())) {
+                return false;
+            }
+            removeSubscriber(subscription.getValue(), sessionId, subscription.getKey());
+            return true;
+        });
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        Subscribers subscribers = subscribersByDestination.get(destination);
+        return subscribers != null ? subscribers.view : NO_SUBSCRIBERS;
+    }
+
+    private void removeSubscriber(String destination, String sessionId, String subscriptionId) {
+        subscribersByDestination.computeIfPresent(destination, (key, subscribers) -> {
+            subscribers.bySession.computeIfPresent(sessionId, (id, ids) -> {
+                ids.remove(subscriptionId);
+                return ids.isEmpty() ? null : ids;
+            });
+            return subscribers.bySession.isEmpty() ? null : subscribers;
+        });
+    }
+
+    public int getSubscriptionCount() {
+        return destinationsBySession.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public int getDestinationCount() {
+        return subscribersByDestination.size();
+    }
+
+    private static class Subscribers {
+        // A session rarely holds more than one subscription to a destination
+        final Map<String, List<String>> bySession = new ConcurrentHashMap<>();
+        final MultiValueMap<String, String> view = CollectionUtils.toMultiValueMap(bySession);
+    }
+}
@@ -0,0 +1,155 @@
+package com.chatty.websocket;
+
+import com.chatty.dto.PresenceDiffDTO;
+import com.chatty.service.ContactService;
+import com.chatty.service.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates presence transitions over a short window and delivers them as
+ * compact diff frames.
+ *
+ * Each node collects the transitions of its own sessions and publishes one
+ * diff per window on a Redis channel. Every node then delivers it twice:
+ *
+ * - Whole, on {@code /topic/presence}, for the General room. Everyone shares
+ *   General, so this is everybody's presence; it goes out as one broadcast
+ *   frame, encoded once, instead of a copy per user.
+ * - Per connected user, on {@code /user/queue/presence}, only the part that
+ *   concerns their contacts from other rooms and private conversations.
+ *   Contacts are mutual, so the recipients are found from the contacts of
+ *   the users who changed, which costs one lookup per changed user rather
+ *   than one per connected user.
+ *
+ * Initial state comes from {@code GET /api/users/presence}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PresenceBroadcaster implements MessageListener {
+
+    private final PresenceService presenceService;
+    private final ContactService contactService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final ObjectMapper objectMapper;
+
+    @Value("${presence.channel:presence:diffs}")
+    private String presenceChannel;
+
+    private static final String GENERAL_PRESENCE_DESTINATION = "/topic/presence";
+
+    // username -> transition seen in the current window
+    private final Map<String, Change> pendingChanges = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(presenceChannel));
+    }
+
+    public void userOnline(String username) {
+        recordChange(username, true);
+    }
+
+    public void userOffline(String username) {
+        recordChange(username, false);
+    }
+
+    /**
+     * Users left online by a crashed node go offline like any other user.
+     */
+    @EventListener
+    public void onUsersExpired(PresenceService.UsersExpiredEvent event) {
+        event.usernames().forEach(this::userOffline);
+    }
+
+    private void recordChange(String username, boolean online) {
+        // Keep the state from before the window so on/off flaps within it cancel out
+        pendingChanges.merge(username, new Change(!online, online),
+                (previous, latest) -> new Change(previous.before(), latest.after()));
+    }
+
+    @Scheduled(fixedDelayString = "${presence.broadcast-window-ms:500}")
+    public void flush() {
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+
+        PresenceDiffDTO diff = new PresenceDiffDTO();
+        for (String username : new ArrayList<>(pendingChanges.keySet())) {
+            Change change = pendingChanges.remove(username);
+            if (change == null || change.before() == change.after()) {
+                continue;
+            }
+            (change.after() ? diff.getOnline() : diff.getOffline()).add(username);
+        }
+
+        if (diff.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.convertAndSend(presenceChannel, objectMapper.writeValueAsString(diff));
+        } catch (Exception e) {
+            // Redis unavailable - still deliver to this node's users
+            log.warn("Failed to publish presence diff: {}", e.getMessage());
+            deliver(diff);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            deliver(objectMapper.readValue(message.getBody(), PresenceDiffDTO.class));
+        } catch (Exception e) {
+            log.error("Failed to handle presence diff: {}", e.getMessage());
+        }
+    }
+
+    private void deliver(PresenceDiffDTO diff) {
+        // recipient -> the part of the diff about their contacts
+        Map<String, PresenceDiffDTO> diffsByRecipient = new HashMap<>();
+        for (String username : diff.getOnline()) {
+            forLocalContacts(username, diffsByRecipient, recipientDiff -> recipientDiff.getOnline().add(username));
+        }
+        for (String username : diff.getOffline()) {
+            forLocalContacts(username, diffsByRecipient, recipientDiff -> recipientDiff.getOffline().add(username));
+        }
+
+        messagingTemplate.convertAndSend(GENERAL_PRESENCE_DESTINATION, diff);
+        diffsByRecipient.forEach((recipient, recipientDiff) ->
+                messagingTemplate.convertAndSendToUser(recipient, "/queue/presence", recipientDiff));
+    }
+
+    private void forLocalContacts(String username, Map<String, PresenceDiffDTO> diffsByRecipient,
+                                  Consumer<PresenceDiffDTO> update) {
+        for (String contact : contactService.getContactUsernames(username)) {
+            if (presenceService.isLocalUser(contact)) {
+                update.accept(diffsByRecipient.computeIfAbsent(contact, c -> new PresenceDiffDTO()));
+            }
+        }
+    }
+
+    private record Change(boolean before, boolean after) {
+    }
+}
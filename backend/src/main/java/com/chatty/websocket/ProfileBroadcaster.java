@@ -0,0 +1,31 @@
+package com.chatty.websocket;
+
+import com.chatty.dto.UserProfileDTO;
+import com.chatty.dto.UserProfileEventDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Forwards profile changes to this node's clients on {@code /topic/profiles},
+ * so cached sender profiles used for compact message frames stay current.
+ * Every node receives each change once, locally or over Redis.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProfileBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @EventListener
+    public void onProfileChanged(UserProfileEventDTO event) {
+        messagingTemplate.convertAndSend("/topic/profiles", UserProfileDTO.builder()
+                .id(event.getUserId())
+                .username(event.getUsername())
+                .displayName(event.getDisplayName())
+                .profilePicture(event.getProfilePicture())
+                .profileVersion(event.getProfileVersion())
+                .build());
+    }
+}
@@ -0,0 +1,184 @@
+package com.chatty.websocket;
+
+import com.chatty.dto.MembershipEventDTO;
+import com.chatty.service.ChatRoomService;
+import com.chatty.service.UserService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Authorizes every STOMP SEND and SUBSCRIBE frame.
+ *
+ * Room-scoped destinations ({@code /topic/public.*}, {@code /topic/typing.*},
+ * {@code /app/chat.public.*}, {@code /app/chat.typing.*}) require room
+ * membership. Clients may not SEND straight to broker destinations or
+ * SUBSCRIBE to another session's {@code /queue}. Denied frames are dropped
+ * and counted.
+ *
+ * Decisions are cached per session (roomId -> allowed) in front of the
+ * per-node membership sets of {@link com.chatty.service.RoomMembershipService},
+ * so the hot path is two map lookups. Join/leave events clear the affected
+ * user's cached decisions for that room, and a leave also drops the broker
+ * subscriptions that user's sessions on this node hold for the room's
+ * topics, so they stop receiving it straight away.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoomAuthorizationInterceptor implements ChannelInterceptor {
+
+    private final ChatRoomService chatRoomService;
+    private final UserService userService;
+    private final MeterRegistry meterRegistry;
+    private final ExactDestinationSubscriptionRegistry subscriptionRegistry;
+
+    private static final String[] ROOM_SUBSCRIBE_PREFIXES = {"/topic/public.", "/topic/typing."};
+    private static final String[] ROOM_SEND_PREFIXES = {"/app/chat.public.", "/app/chat.typing."};
+    private static final String[] BROKER_PREFIXES = {"/topic/", "/queue/"};
+
+    // sessionId -> cached decisions, and userId -> sessionIds for invalidation
+    private final Map<String, SessionDecisions> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+
+    private Counter subscribeDenied;
+    private Counter sendDenied;
+
+    @PostConstruct
+    public void init() {
+        subscribeDenied = Counter.builder("chatty.websocket.authz.denied")
+                .tag("command", "SUBSCRIBE")
+                .register(meterRegistry);
+        sendDenied = Counter.builder("chatty.websocket.authz.denied")
+                .tag("command", "SEND")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+
+        StompCommand command = accessor.getCommand();
+        String destination = accessor.getDestination();
+        if (destination == null || (command != StompCommand.SUBSCRIBE && command != StompCommand.SEND)) {
+            return message;
+        }
+
+        boolean subscribe = command == StompCommand.SUBSCRIBE;
+        if (isAllowed(accessor, destination, subscribe)) {
+            return message;
+        }
+
+        (subscribe ? subscribeDenied : sendDenied).increment();
+        log.debug("Denied {} to {} for session {}", command, destination, accessor.getSessionId());
+        return null;
+    }
+
+    @EventListener
+    public void onMembershipChanged(MembershipEventDTO event) {
+        Set<String> sessionIds = userSessions.get(event.getUserId());
+        if (sessionIds == null) {
+            return;
+        }
+        List<String> roomTopics = event.isJoined() ? List.of() : Arrays.stream(ROOM_SUBSCRIBE_PREFIXES)
+                .map(prefix -> prefix + event.getRoomId())
+                .toList();
+        for (String sessionId : sessionIds) {
+            SessionDecisions decisions = sessions.get(sessionId);
+            if (decisions != null) {
+                decisions.rooms().remove(event.getRoomId());
+            }
+            if (!roomTopics.isEmpty()) {
+                subscriptionRegistry.removeSubscriptions(sessionId, roomTopics);
+            }
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        SessionDecisions decisions = sessions.remove(event.getSessionId());
+        if (decisions != null) {
+            userSessions.computeIfPresent(decisions.userId(), (userId, sessionIds) -> {
+                sessionIds.remove(event.getSessionId());
+                return sessionIds.isEmpty() ? null : sessionIds;
+            });
+        }
+    }
+
+    private boolean isAllowed(StompHeaderAccessor accessor, String destination, boolean subscribe) {
+        String roomId = roomIdOf(destination, subscribe ? ROOM_SUBSCRIBE_PREFIXES : ROOM_SEND_PREFIXES);
+        if (roomId != null) {
+            return isRoomMember(accessor, roomId);
+        }
+        // Broker destinations are only reachable through /app handlers, and
+        // /queue only through /user
+        if (subscribe) {
+            return !destination.startsWith("/queue/");
+        }
+        return roomIdOf(destination, BROKER_PREFIXES) == null;
+    }
+
+    private boolean isRoomMember(StompHeaderAccessor accessor, String roomId) {
+        String sessionId = accessor.getSessionId();
+        Principal principal = accessor.getUser();
+        if (sessionId == null || principal == null) {
+            return false;
+        }
+
+        SessionDecisions decisions = sessions.get(sessionId);
+        if (decisions == null) {
+            decisions = register(sessionId, principal.getName());
+        }
+
+        Boolean allowed = decisions.rooms().get(roomId);
+        if (allowed == null) {
+            allowed = chatRoomService.isUserInRoom(roomId, decisions.userId());
+            decisions.rooms().put(roomId, allowed);
+        }
+        return allowed;
+    }
+
+    private SessionDecisions register(String sessionId, String username) {
+        String userId = userService.getUserEntityByUsername(username).getId();
+        SessionDecisions decisions = new SessionDecisions(userId, new ConcurrentHashMap<>());
+        SessionDecisions existing = sessions.putIfAbsent(sessionId, decisions);
+        if (existing != null) {
+            return existing;
+        }
+        userSessions.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(sessionId);
+        return decisions;
+    }
+
+    private static String roomIdOf(String destination, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (destination.startsWith(prefix)) {
+                return destination.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
+    private record SessionDecisions(String userId, Map<String, Boolean> rooms) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.chatty.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A MESSAGE frame made of its per-subscription header lines and the encoded
+ * broadcast shared by all subscribers; see {@link SharedFrameStompEncoder}.
+ *
+ * Native sessions get it as two fragments of one WebSocket message, so the
+ * shared bytes are written straight from the shared buffer. SockJS can't carry
+ * fragments and gets the whole frame as one text message.
+ */
+public final class SharedFrameMessage implements WebSocketMessage<byte[]> {
+
+    private final byte[] prefix;
+    // Already decoded by the text message the prefix arrived in; null for binary
+    private final String prefixText;
+    private final SharedFrameStompEncoder.SharedFrame shared;
+
+    SharedFrameMessage(byte[] prefix, String prefixText, SharedFrameStompEncoder.SharedFrame shared) {
+        this.prefix = prefix;
+        this.prefixText = prefixText;
+        this.shared = shared;
+    }
+
+    /**
+     * The STOMP destination, read from the shared headers.
+     */
+    public String getDestination() {
+        return shared.destination;
+    }
+
+    /**
+     * Copies the whole frame. Sending never calls this.
+     */
+    @Override
+    public byte[] getPayload() {
+        byte[] frame = new byte[getPayloadLength()];
+        System.arraycopy(prefix, 0, frame, 0, prefix.length);
+        System.arraycopy(shared.bytes, 0, frame, prefix.length, shared.bytes.length);
+        return frame;
+    }
+
+    @Override
+    public int getPayloadLength() {
+        return prefix.length + shared.bytes.length;
+    }
+
+    @Override
+    public boolean isLast() {
+        return true;
+    }
+
+    void sendTo(WebSocketSession session, boolean fragments) throws IOException {
+        if (!fragments) {
+            session.sendMessage(new TextMessage(prefixText() + shared.textMessage().getPayload()));
+        } else if (prefixText == null) {
+            session.sendMessage(new BinaryMessage(prefix, false));
+            session.sendMessage(new BinaryMessage(shared.buffer(), true));
+        } else {
+            session.sendMessage(new TextMessage(prefixText, false));
+            session.sendMessage(shared.textMessage());
+        }
+    }
+
+    private String prefixText() {
+        return prefixText != null ? prefixText : new String(prefix, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "SharedFrameMessage[destination=" + shared.destination + ", length=" + getPayloadLength() + "]";
+    }
+}
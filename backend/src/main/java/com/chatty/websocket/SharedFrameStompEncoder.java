@@ -0,0 +1,242 @@
+package com.chatty.websocket;
+
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * STOMP encoder that encodes a broadcast once and shares it across every
+ * subscriber.
+ *
+ * When the broker fans a message out, each subscriber gets a MESSAGE frame that
+ * shares the payload array and all headers except {@code subscription} and
+ * {@code message-id}. The shared part (headers, content-length, body and the
+ * terminating NUL) is encoded on the first frame and kept, keyed by payload
+ * identity, in a small lock-free table.
+ *
+ * For each subscriber only the per-subscription header lines are encoded. The
+ * STOMP handler wraps them in a WebSocket message as it would a whole frame,
+ * and {@link SlowConsumerSessionDecorator} swaps that for a
+ * {@link SharedFrameMessage} via {@link #claim}, which writes the header lines
+ * and the shared bytes to the socket without copying them into one frame.
+ * Anything that is not a MESSAGE frame goes through the regular encoder.
+ */
+@Component
+public class SharedFrameStompEncoder extends StompEncoder {
+
+    private static final byte LF = '\n';
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final String SUBSCRIPTION = "subscription";
+    private static final String MESSAGE_ID = "message-id";
+    private static final String CONTENT_LENGTH = "content-length";
+    private static final String DESTINATION = "destination";
+    private static final byte[] SUBSCRIPTION_NAME = "subscription:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_ID_NAME = "message-id:".getBytes(StandardCharsets.UTF_8);
+    private static final Set<String> PER_FRAME_HEADERS = Set.of(SUBSCRIPTION, MESSAGE_ID, CONTENT_LENGTH);
+
+    private static final int SLOTS = 64;
+    private static final int HANDLE_STRIPES = 16;
+
+    private final AtomicReferenceArray<SharedFrame> sharedFrames = new AtomicReferenceArray<>(SLOTS);
+
+    // Per-subscription header bytes -> the frame they belong to, until claimed.
+    // Arrays hash by identity; weak keys let frames Spring drops unsent go away.
+    @SuppressWarnings("unchecked")
+    private final Map<byte[], SharedFrame>[] handles = new Map[HANDLE_STRIPES];
+
+    public SharedFrameStompEncoder() {
+        for (int i = 0; i < HANDLE_STRIPES; i++) {
+            handles[i] = new WeakHashMap<>();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        Map<String, List<String>> nativeHeaders =
+                (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || nativeHeaders == null || payload.length == 0) {
+            return super.encode(headers, payload);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.writeBytes(MESSAGE_COMMAND);
+        writeHeader(out, SUBSCRIPTION_NAME, nativeHeaders.get(SUBSCRIPTION));
+        writeHeader(out, MESSAGE_ID_NAME, nativeHeaders.get(MESSAGE_ID));
+        byte[] prefix = out.toByteArray();
+
+        SharedFrame shared = sharedFrame(nativeHeaders, payload);
+        Map<byte[], SharedFrame> stripe = handles[stripe(prefix)];
+        synchronized (stripe) {
+            stripe.put(prefix, shared);
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns the shared frame message for a WebSocket message built from the
+     * output of {@link #encode}, or the message itself if it carries a
+     * complete frame. Each encoded frame can be claimed once.
+     */
+    public WebSocketMessage<?> claim(WebSocketMessage<?> message) {
+        byte[] bytes;
+        String text = null;
+        if (message instanceof TextMessage textMessage) {
+            bytes = textMessage.asBytes();
+            text = textMessage.getPayload();
+        } else if (message instanceof BinaryMessage binary && binary.getPayload().hasArray()) {
+            bytes = binary.getPayload().array();
+        } else {
+            return message;
+        }
+
+        SharedFrame shared;
+        Map<byte[], SharedFrame> stripe = handles[stripe(bytes)];
+        synchronized (stripe) {
+            shared = stripe.remove(bytes);
+        }
+        return shared != null ? new SharedFrameMessage(bytes, text, shared) : message;
+    }
+
+    private static int stripe(byte[] bytes) {
+        return System.identityHashCode(bytes) & (HANDLE_STRIPES - 1);
+    }
+
+    private SharedFrame sharedFrame(Map<String, List<String>> nativeHeaders, byte[] payload) {
+        int slot = System.identityHashCode(payload) & (SLOTS - 1);
+        SharedFrame cached = sharedFrames.get(slot);
+        if (cached != null && cached.payload == payload && sameSharedHeaders(nativeHeaders, cached.headers)) {
+            return cached;
+        }
+
+        Map<String, List<String>> sharedHeaders = new LinkedHashMap<>(nativeHeaders);
+        sharedHeaders.keySet().removeAll(PER_FRAME_HEADERS);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 256);
+        for (Map.Entry<String, List<String>> entry : sharedHeaders.entrySet()) {
+            writeHeader(out, entry.getKey(), entry.getValue());
+        }
+        writeHeader(out, CONTENT_LENGTH, List.of(String.valueOf(payload.length)));
+        out.write(LF);
+        out.writeBytes(payload);
+        out.write(0);
+
+        List<String> destination = sharedHeaders.get(DESTINATION);
+        SharedFrame frame = new SharedFrame(payload, sharedHeaders, out.toByteArray(),
+                destination != null && !destination.isEmpty() ? destination.get(0) : null);
+        sharedFrames.set(slot, frame);
+        return frame;
+    }
+
+    private static boolean sameSharedHeaders(Map<String, List<String>> nativeHeaders,
+                                             Map<String, List<String>> sharedHeaders) {
+        int matched = 0;
+        for (Map.Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+            if (PER_FRAME_HEADERS.contains(entry.getKey())) {
+                continue;
+            }
+            if (!entry.getValue().equals(sharedHeaders.get(entry.getKey()))) {
+                return false;
+            }
+            matched++;
+        }
+        return matched == sharedHeaders.size();
+    }
+
+    private void writeHeader(ByteArrayOutputStream out, String name, List<String> values) {
+        if (values != null) {
+            byte[] nameAndColon = (escape(name) + ':').getBytes(StandardCharsets.UTF_8);
+            writeHeader(out, nameAndColon, values);
+        }
+    }
+
+    private void writeHeader(ByteArrayOutputStream out, byte[] nameAndColon, List<String> values) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            out.writeBytes(nameAndColon);
+            out.writeBytes(escape(value).getBytes(StandardCharsets.UTF_8));
+            out.write(LF);
+        }
+    }
+
+    // Header escaping as defined for every frame except CONNECT/CONNECTED
+    private static String escape(String text) {
+        StringBuilder sb = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case ':' -> "\\c";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                default -> null;
+            };
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(text.length() + 8).append(text, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) {
+                    sb.append(replacement);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb != null ? sb.toString() : text;
+    }
+
+    /**
+     * The part of a broadcast frame that is the same for every subscriber.
+     * Read-only once built.
+     */
+    static final class SharedFrame {
+
+        private final byte[] payload;
+        private final Map<String, List<String>> headers;
+        final byte[] bytes;
+        final String destination;
+
+        // Built on first use by a text session; racing threads build equal messages.
+        // Constructed from the bytes, so its length is known without re-encoding
+        private volatile TextMessage textMessage;
+
+        SharedFrame(byte[] payload, Map<String, List<String>> headers, byte[] bytes, String destination) {
+            this.payload = payload;
+            this.headers = headers;
+            this.bytes = bytes;
+            this.destination = destination;
+        }
+
+        TextMessage textMessage() {
+            TextMessage message = textMessage;
+            if (message == null) {
+                message = new TextMessage(bytes);
+                textMessage = message;
+            }
+            return message;
+        }
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes);
+        }
+    }
+}
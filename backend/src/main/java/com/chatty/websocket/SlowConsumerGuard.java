@@ -0,0 +1,178 @@
+package com.chatty.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps every WebSocket session in a {@link SlowConsumerSessionDecorator} so a
+ * client on a bad network can't make its send buffer balloon or hold up the
+ * outbound channel. Socket writes happen on a dedicated send pool, a
+ * watchdog closes sessions whose current write has been blocked past the
+ * send time limit, and per-session queue depths, shed frames and disconnects
+ * are exported as metrics.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SlowConsumerGuard implements WebSocketHandlerDecoratorFactory {
+
+    private final MeterRegistry meterRegistry;
+    private final SharedFrameStompEncoder encoder;
+
+    @Value("${websocket.outbound.policy:DROP_NON_CRITICAL}")
+    private SlowConsumerPolicy policy;
+
+    @Value("${websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    @Value("${websocket.outbound.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${websocket.outbound.send-threads:32}")
+    private int sendThreads;
+
+    // How often sessions are checked for a write stuck past the send time limit
+    @Value("${websocket.outbound.send-time-check-ms:1000}")
+    private long sendTimeCheckMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    private final Map<String, SlowConsumerSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    private TaskExecutor sendExecutor;
+    private ScheduledExecutorService sendTimeWatchdog;
+    private DistributionSummary queueDepthSummary;
+    private Counter droppedCounter;
+    private Counter conflatedCounter;
+
+    @PostConstruct
+    public void init() {
+        if (virtualThreadsEnabled) {
+            // One virtual thread per session with frames to write
+            sendExecutor = new VirtualThreadTaskExecutor("ws-send-");
+        } else {
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setThreadNamePrefix("ws-send-");
+            pool.setCorePoolSize(sendThreads);
+            pool.setMaxPoolSize(sendThreads);
+            pool.setAllowCoreThreadTimeOut(true);
+            pool.initialize();
+            sendExecutor = pool;
+        }
+
+        // Own thread: a stuck write must be noticed even when no new frame arrives
+        sendTimeWatchdog = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ws-send-watchdog-"));
+        sendTimeWatchdog.scheduleWithFixedDelay(this::checkSendTimes, sendTimeCheckMs, sendTimeCheckMs, TimeUnit.MILLISECONDS);
+
+        queueDepthSummary = DistributionSummary.builder("chatty.websocket.outbound.queue.depth")
+                .description("Frames queued on a session when a new frame is added")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("chatty.websocket.outbound.shed")
+                .tag("reason", "dropped")
+                .register(meterRegistry);
+        conflatedCounter = Counter.builder("chatty.websocket.outbound.shed")
+                .tag("reason", "conflated")
+                .register(meterRegistry);
+        Gauge.builder("chatty.websocket.outbound.queue.depth.max", sessions, this::maxQueueDepth)
+                .register(meterRegistry);
+        Gauge.builder("chatty.websocket.outbound.queued", sessions, this::totalQueueDepth)
+                .register(meterRegistry);
+
+        log.info("Slow consumer policy {} (send time limit {} ms, buffer limit {} bytes)",
+                policy, sendTimeLimitMs, sendBufferSizeLimit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendTimeWatchdog.shutdownNow();
+        if (sendExecutor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SlowConsumerSessionDecorator decorated = new SlowConsumerSessionDecorator(
+                        session, SlowConsumerGuard.this, policy, sendTimeLimitMs, sendBufferSizeLimit, sendExecutor,
+                        encoder);
+                sessions.put(session.getId(), decorated);
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                SlowConsumerSessionDecorator decorated = sessions.remove(session.getId());
+                if (decorated != null) {
+                    decorated.discard();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Current queue depth of one session, or 0 if it is not connected here.
+     */
+    public int getQueueDepth(String sessionId) {
+        SlowConsumerSessionDecorator session = sessions.get(sessionId);
+        return session != null ? session.getQueueDepth() : 0;
+    }
+
+    private void checkSendTimes() {
+        // One failing session must not stop the sessions after it from being checked
+        for (SlowConsumerSessionDecorator session : sessions.values()) {
+            try {
+                session.checkSendTime();
+            } catch (Exception e) {
+                log.warn("Send time check failed for session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    void recordQueueDepth(int depth) {
+        queueDepthSummary.record(depth);
+    }
+
+    void recordShed(String reason) {
+        ("conflated".equals(reason) ? conflatedCounter : droppedCounter).increment();
+    }
+
+    void recordDisconnect(String reason) {
+        meterRegistry.counter("chatty.websocket.outbound.disconnected", "reason", reason).increment();
+    }
+
+    private double maxQueueDepth(Map<String, SlowConsumerSessionDecorator> sessions) {
+        return sessions.values().stream().mapToInt(SlowConsumerSessionDecorator::getQueueDepth).max().orElse(0);
+    }
+
+    private double totalQueueDepth(Map<String, SlowConsumerSessionDecorator> sessions) {
+        return sessions.values().stream().mapToInt(SlowConsumerSessionDecorator::getQueueDepth).sum();
+    }
+}
@@ -0,0 +1,20 @@
+package com.chatty.websocket;
+
+/**
+ * What to do when a WebSocket session's outbound buffer grows past its limit.
+ *
+ * Typing and presence frames are non-critical: they are either full state that
+ * the next frame replaces, or can be re-fetched. Chat messages and
+ * notifications are always critical.
+ */
+public enum SlowConsumerPolicy {
+
+    /** Drop the oldest queued non-critical frames; disconnect if that is not enough. */
+    DROP_NON_CRITICAL,
+
+    /** Keep only the latest queued frame per state destination, then drop as above. */
+    CONFLATE,
+
+    /** Disconnect straight away with a resumable close status. */
+    DISCONNECT
+}
@@ -0,0 +1,271 @@
+package com.chatty.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-session outbound buffer that applies the {@link SlowConsumerPolicy}.
+ *
+ * Frames are queued here and written to the socket by a sender task, so the
+ * outbound channel thread never blocks on a slow client. When the queued bytes
+ * exceed the buffer limit the policy decides what to shed. A single write that
+ * takes longer than the send time limit means the client has stopped reading,
+ * and the session is closed whatever the policy. That is checked when a frame
+ * is queued and periodically by {@link SlowConsumerGuard}, since a stuck
+ * session may get no further frames.
+ *
+ * Broadcast frames from {@link SharedFrameStompEncoder} are claimed here, the
+ * first decorator every session has, and queued as {@link SharedFrameMessage}s.
+ */
+@Slf4j
+public class SlowConsumerSessionDecorator extends WebSocketSessionDecorator {
+
+    /** Application close code telling the client to reconnect and resync. */
+    public static final CloseStatus SLOW_CONSUMER = new CloseStatus(4001, "Slow consumer, reconnect to resume");
+
+    private static final String TYPING_PREFIX = "/topic/typing.";
+    private static final String PRESENCE_DESTINATION = "/user/queue/presence";
+    private static final String GENERAL_PRESENCE_DESTINATION = "/topic/presence";
+
+    private final SlowConsumerGuard guard;
+    private final SlowConsumerPolicy policy;
+    private final long sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final Executor sendExecutor;
+    private final SharedFrameStompEncoder encoder;
+    private final boolean fragments;
+
+    // Guarded by itself
+    private final Deque<Frame> buffer = new ArrayDeque<>();
+    private int bufferSize;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean slowConsumerClosed = new AtomicBoolean();
+    private volatile long sendStartTime;
+    private volatile boolean closing;
+
+    public SlowConsumerSessionDecorator(WebSocketSession session, SlowConsumerGuard guard, SlowConsumerPolicy policy,
+                                        long sendTimeLimitMs, int bufferSizeLimit, Executor sendExecutor,
+                                        SharedFrameStompEncoder encoder) {
+        super(session);
+        this.guard = guard;
+        this.policy = policy;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendExecutor = sendExecutor;
+        this.encoder = encoder;
+        this.fragments = !(WebSocketSessionDecorator.unwrap(session) instanceof SockJsSession);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closing) {
+            return;
+        }
+
+        Frame frame = Frame.of(encoder.claim(message));
+        boolean overLimit;
+        int depth;
+        synchronized (buffer) {
+            if (policy == SlowConsumerPolicy.CONFLATE && frame.conflatable()) {
+                conflate(frame.destination());
+            }
+            buffer.addLast(frame);
+            bufferSize += frame.size();
+
+            overLimit = bufferSize > bufferSizeLimit;
+            if (overLimit && policy != SlowConsumerPolicy.DISCONNECT) {
+                dropNonCritical();
+                overLimit = bufferSize > bufferSizeLimit;
+            }
+            depth = buffer.size();
+        }
+        guard.recordQueueDepth(depth);
+
+        if (overLimit) {
+            closeSlowConsumer("buffer", "buffered more than " + bufferSizeLimit + " bytes");
+        } else if (!checkSendTime()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Closes the session if the frame being written has been blocked for
+     * longer than the send time limit; returns whether it did.
+     */
+    boolean checkSendTime() {
+        long start = sendStartTime;
+        if (closing || start <= 0 || System.currentTimeMillis() - start <= sendTimeLimitMs) {
+            return false;
+        }
+        closeSlowConsumer("send-time", "send blocked for more than " + sendTimeLimitMs + " ms");
+        return true;
+    }
+
+    public int getQueueDepth() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    /**
+     * Drops anything still queued once the connection is gone.
+     */
+    void discard() {
+        closing = true;
+        clearBuffer();
+    }
+
+    private void conflate(String destination) {
+        Iterator<Frame> it = buffer.iterator();
+        while (it.hasNext()) {
+            Frame queued = it.next();
+            if (destination.equals(queued.destination())) {
+                it.remove();
+                bufferSize -= queued.size();
+                guard.recordShed("conflated");
+            }
+        }
+    }
+
+    private void dropNonCritical() {
+        Iterator<Frame> it = buffer.iterator();
+        while (bufferSize > bufferSizeLimit && it.hasNext()) {
+            Frame queued = it.next();
+            if (!queued.critical()) {
+                it.remove();
+                bufferSize -= queued.size();
+                guard.recordShed("dropped");
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sendExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            log.warn("Outbound send pool rejected session {}", getId());
+        }
+    }
+
+    private void drain() {
+        try {
+            Frame frame;
+            while (!closing && (frame = poll()) != null) {
+                sendStartTime = System.currentTimeMillis();
+                try {
+                    if (frame.message() instanceof SharedFrameMessage shared) {
+                        shared.sendTo(getDelegate(), fragments);
+                    } else {
+                        super.sendMessage(frame.message());
+                    }
+                } finally {
+                    sendStartTime = 0;
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Send failed on session {}: {}", getId(), e.getMessage());
+            closing = true;
+            clearBuffer();
+            closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            draining.set(false);
+        }
+
+        // A frame may have been queued after the last poll
+        if (!closing && getQueueDepth() > 0) {
+            scheduleDrain();
+        }
+    }
+
+    private Frame poll() {
+        synchronized (buffer) {
+            Frame frame = buffer.pollFirst();
+            if (frame != null) {
+                bufferSize -= frame.size();
+            }
+            return frame;
+        }
+    }
+
+    private void clearBuffer() {
+        synchronized (buffer) {
+            buffer.clear();
+            bufferSize = 0;
+        }
+    }
+
+    private void closeSlowConsumer(String reason, String detail) {
+        // Called from the outbound channel and the send time watchdog
+        if (!slowConsumerClosed.compareAndSet(false, true)) {
+            return;
+        }
+        closing = true;
+        clearBuffer();
+        guard.recordDisconnect(reason);
+        log.warn("Closing slow consumer session {}: {}", getId(), detail);
+        closeQuietly(SLOW_CONSUMER);
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            close(status);
+        } catch (IOException e) {
+            log.debug("Failed to close session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * A queued frame with the STOMP destination read from its headers.
+     */
+    private record Frame(WebSocketMessage<?> message, String destination, int size) {
+
+        static Frame of(WebSocketMessage<?> message) {
+            String destination;
+            if (message instanceof SharedFrameMessage shared) {
+                destination = shared.getDestination();
+            } else {
+                destination = message instanceof TextMessage text ? destinationOf(text.getPayload()) : null;
+            }
+            return new Frame(message, destination, message.getPayloadLength());
+        }
+
+        boolean conflatable() {
+            // Typing frames carry the full "who is typing" state of a room
+            return destination != null && destination.startsWith(TYPING_PREFIX);
+        }
+
+        boolean critical() {
+            return !conflatable() && !PRESENCE_DESTINATION.equals(destination)
+                    && !GENERAL_PRESENCE_DESTINATION.equals(destination);
+        }
+
+        private static String destinationOf(String payload) {
+            int headersEnd = payload.indexOf("\n\n");
+            int start = payload.indexOf("\ndestination:");
+            if (start < 0 || (headersEnd >= 0 && start > headersEnd)) {
+                return null;
+            }
+            start += "\ndestination:".length();
+            int end = payload.indexOf('\n', start);
+            return end < 0 ? payload.substring(start) : payload.substring(start, end);
+        }
+    }
+}
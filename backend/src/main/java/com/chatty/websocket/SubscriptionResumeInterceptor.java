@@ -0,0 +1,162 @@
+package com.chatty.websocket;
+
+import com.chatty.dto.MessageDTO;
+import com.chatty.service.MessageReplayService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Replays missed room messages when a client resumes a room subscription.
+ *
+ * A SUBSCRIBE to {@code /topic/public.{roomId}} may carry a
+ * {@code resume-from} header with the last sequence number the client saw.
+ * Once the broker has registered the subscription (so nothing broadcast from
+ * then on is missed), the messages after that number are sent to that
+ * subscription only, oldest first, on a small replay pool. If the client is
+ * too far behind, it gets a single frame with a {@code resync} header
+ * instead and reloads history.
+ *
+ * Registered after {@link RoomAuthorizationInterceptor}, so denied
+ * subscriptions never reach the broker or this interceptor.
+ */
+@Slf4j
+@Component
+public class SubscriptionResumeInterceptor implements ExecutorChannelInterceptor {
+
+    public static final String RESUME_FROM_HEADER = "resume-from";
+    public static final String RESYNC_HEADER = "resync";
+
+    private static final String ROOM_PREFIX = "/topic/public.";
+
+    private final MessageReplayService messageReplayService;
+    private final ObjectMapper objectMapper;
+
+    // Created by the broker configuration that this interceptor is part of
+    private final MessageChannel clientOutboundChannel;
+
+    @Value("${replay.threads:4}")
+    private int threads;
+
+    @Value("${replay.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolTaskExecutor replayExecutor;
+
+    @Autowired
+    public SubscriptionResumeInterceptor(MessageReplayService messageReplayService, ObjectMapper objectMapper,
+                                         @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+        this.messageReplayService = messageReplayService;
+        this.objectMapper = objectMapper;
+        this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    @PostConstruct
+    public void init() {
+        replayExecutor = new ThreadPoolTaskExecutor();
+        replayExecutor.setThreadNamePrefix("ws-replay-");
+        replayExecutor.setCorePoolSize(threads);
+        replayExecutor.setMaxPoolSize(threads);
+        replayExecutor.setQueueCapacity(queueCapacity);
+        replayExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        replayExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replayExecutor.shutdown();
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler)) {
+            return;
+        }
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.SUBSCRIBE) {
+            return;
+        }
+        String destination = accessor.getDestination();
+        String resumeFrom = accessor.getFirstNativeHeader(RESUME_FROM_HEADER);
+        if (destination == null || !destination.startsWith(ROOM_PREFIX) || resumeFrom == null) {
+            return;
+        }
+
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(resumeFrom);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        String roomId = destination.substring(ROOM_PREFIX.length());
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+
+        try {
+            replayExecutor.execute(() -> replay(roomId, lastSeq, destination, sessionId, subscriptionId));
+        } catch (RejectedExecutionException e) {
+            log.warn("Replay pool saturated, asking session {} to resync room {}", sessionId, roomId);
+            sendResync(destination, sessionId, subscriptionId);
+        }
+    }
+
+    private void replay(String roomId, long lastSeq, String destination, String sessionId, String subscriptionId) {
+        MessageReplayService.Replay replay = messageReplayService.missedSince(roomId, lastSeq);
+        if (replay.messages() == null) {
+            sendResync(destination, sessionId, subscriptionId);
+            return;
+        }
+        log.debug("Replaying {} messages of room {} from {} to session {}",
+                replay.messages().size(), roomId, replay.source(), sessionId);
+        for (MessageDTO missed : replay.messages()) {
+            try {
+                send(destination, sessionId, subscriptionId, objectMapper.writeValueAsBytes(missed), false);
+            } catch (Exception e) {
+                log.warn("Failed to replay message {} to session {}: {}", missed.getId(), sessionId, e.getMessage());
+                sendResync(destination, sessionId, subscriptionId);
+                return;
+            }
+        }
+    }
+
+    private void sendResync(String destination, String sessionId, String subscriptionId) {
+        // A fresh array: the frame encoder caches encoded frames by payload identity
+        send(destination, sessionId, subscriptionId, "{}".getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    private void send(String destination, String sessionId, String subscriptionId, byte[] payload, boolean resync) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (resync) {
+            headers.setNativeHeader(RESYNC_HEADER, "true");
+        }
+        headers.setLeaveMutable(true);
+        clientOutboundChannel.send(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.chatty.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frame and byte counters per transport ({@code websocket} for the native
+ * /stomp endpoint, {@code sockjs} for /ws), so we can see how much traffic
+ * still goes through SockJS.
+ *
+ * Bytes are STOMP frame payload sizes, before SockJS framing and before
+ * permessage-deflate.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransportMetrics implements WebSocketHandlerDecoratorFactory {
+
+    private final MeterRegistry meterRegistry;
+
+    private Meters websocket;
+    private Meters sockjs;
+
+    @PostConstruct
+    public void init() {
+        websocket = new Meters("websocket");
+        sockjs = new Meters("sockjs");
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                Meters meters = metersFor(session);
+                meters.sessions.incrementAndGet();
+                super.afterConnectionEstablished(new CountingSession(session, meters));
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                Meters meters = metersFor(session);
+                meters.framesIn.increment();
+                meters.bytesIn.increment(message.getPayloadLength());
+                super.handleMessage(session, message);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                metersFor(session).sessions.decrementAndGet();
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    private Meters metersFor(WebSocketSession session) {
+        return session instanceof SockJsSession ? sockjs : websocket;
+    }
+
+    private static class CountingSession extends WebSocketSessionDecorator {
+
+        private final Meters meters;
+
+        CountingSession(WebSocketSession session, Meters meters) {
+            super(session);
+            this.meters = meters;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            super.sendMessage(message);
+            // A shared broadcast frame goes out in fragments; count it once
+            if (message.isLast()) {
+                meters.framesOut.increment();
+            }
+            meters.bytesOut.increment(message.getPayloadLength());
+        }
+    }
+
+    private class Meters {
+
+        final Counter framesIn;
+        final Counter framesOut;
+        final Counter bytesIn;
+        final Counter bytesOut;
+        final AtomicInteger sessions = new AtomicInteger();
+
+        Meters(String transport) {
+            framesIn = counter("chatty.websocket.frames", transport, "inbound");
+            framesOut = counter("chatty.websocket.frames", transport, "outbound");
+            bytesIn = counter("chatty.websocket.bytes", transport, "inbound");
+            bytesOut = counter("chatty.websocket.bytes", transport, "outbound");
+            Gauge.builder("chatty.websocket.sessions", sessions, AtomicInteger::get)
+                    .tag("transport", transport)
+                    .register(meterRegistry);
+        }
+
+        private Counter counter(String name, String transport, String direction) {
+            return Counter.builder(name)
+                    .tag("transport", transport)
+                    .tag("direction", direction)
+                    .register(meterRegistry);
+        }
+    }
+}
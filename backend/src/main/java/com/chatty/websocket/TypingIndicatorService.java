@@ -0,0 +1,166 @@
+package com.chatty.websocket;
+
+import com.chatty.dto.TypingEventDTO;
+import com.chatty.dto.TypingStateDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Ephemeral typing indicators, kept entirely off Kafka.
+ *
+ * Keystroke signals are throttled per user per room, batched, and exchanged
+ * between nodes over Redis pub/sub. Each node keeps a per-room "who is
+ * typing" state with short expiries and sends a {@link TypingStateDTO} to
+ * /topic/typing.{roomId} only when that state changes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TypingIndicatorService implements MessageListener {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final ObjectMapper objectMapper;
+
+    @Value("${typing.throttle-ms:1000}")
+    private long throttleMs;
+
+    @Value("${typing.ttl-ms:3000}")
+    private long ttlMs;
+
+    @Value("${typing.channel:typing:events}")
+    private String typingChannel;
+
+    private static final TypeReference<List<TypingEventDTO>> EVENT_LIST = new TypeReference<>() {};
+
+    // "roomId|username" -> last accepted typing signal (ms)
+    private final Map<String, Long> lastAccepted = new ConcurrentHashMap<>();
+
+    // Accepted local signals waiting to be published
+    private final ConcurrentLinkedQueue<TypingEventDTO> outbox = new ConcurrentLinkedQueue<>();
+
+    // roomId -> (username -> expiry ms), and the last state sent per room
+    private final Map<String, Map<String, Long>> typingByRoom = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> lastSent = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(typingChannel));
+    }
+
+    /**
+     * A keystroke signal from a client. Anything within the throttle window of
+     * the previous accepted signal is dropped.
+     */
+    public void typing(String roomId, String username) {
+        long now = System.currentTimeMillis();
+        String key = roomId + "|" + username;
+        Long previous = lastAccepted.get(key);
+        if (previous != null && now - previous < throttleMs) {
+            return;
+        }
+        lastAccepted.put(key, now);
+        outbox.add(new TypingEventDTO(roomId, username, true));
+    }
+
+    /**
+     * Clears the user's indicator right away, e.g. once their message is sent.
+     */
+    public void stoppedTyping(String roomId, String username) {
+        if (lastAccepted.remove(roomId + "|" + username) != null) {
+            outbox.add(new TypingEventDTO(roomId, username, false));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${typing.broadcast-interval-ms:250}")
+    public void flush() {
+        publishOutbox();
+        broadcastChangedRooms();
+
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        lastAccepted.values().removeIf(acceptedAt -> acceptedAt < cutoff);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            apply(objectMapper.readValue(message.getBody(), EVENT_LIST));
+        } catch (Exception e) {
+            log.error("Failed to handle typing events: {}", e.getMessage());
+        }
+    }
+
+    private void publishOutbox() {
+        List<TypingEventDTO> batch = new ArrayList<>();
+        TypingEventDTO event;
+        while ((event = outbox.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.convertAndSend(typingChannel, objectMapper.writeValueAsString(batch));
+        } catch (Exception e) {
+            // Redis unavailable - still show indicators to this node's users
+            log.debug("Failed to publish typing events: {}", e.getMessage());
+            apply(batch);
+        }
+    }
+
+    private void apply(List<TypingEventDTO> events) {
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        for (TypingEventDTO event : events) {
+            Map<String, Long> typing = typingByRoom.computeIfAbsent(event.getRoomId(), id -> new ConcurrentHashMap<>());
+            if (event.isTyping()) {
+                typing.put(event.getUsername(), expiresAt);
+            } else {
+                typing.remove(event.getUsername());
+            }
+        }
+    }
+
+    private void broadcastChangedRooms() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Map<String, Long>> entry : typingByRoom.entrySet()) {
+            String roomId = entry.getKey();
+            Map<String, Long> typing = entry.getValue();
+            typing.values().removeIf(expiresAt -> expiresAt < now);
+
+            List<String> users = typing.keySet().stream().sorted().toList();
+            List<String> previous = lastSent.getOrDefault(roomId, List.of());
+            if (!users.equals(previous)) {
+                messagingTemplate.convertAndSend("/topic/typing." + roomId, new TypingStateDTO(roomId, users));
+            }
+
+            if (users.isEmpty()) {
+                lastSent.remove(roomId);
+                if (typing.isEmpty()) {
+                    typingByRoom.remove(roomId, typing);
+                }
+            } else {
+                lastSent.put(roomId, users);
+            }
+        }
+    }
+}
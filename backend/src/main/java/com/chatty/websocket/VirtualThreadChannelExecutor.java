@@ -0,0 +1,51 @@
+package com.chatty.websocket;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Channel executor that runs every task on a new virtual thread.
+ *
+ * Channel registration only accepts a {@link ThreadPoolTaskExecutor}, so this
+ * extends one for its lifecycle and hands all work to a
+ * {@link SimpleAsyncTaskExecutor} in virtual-thread mode. The concurrency
+ * limit makes callers wait once that many tasks are in flight, so a slow
+ * backend can't pile up unbounded work. Requires a Java 21 runtime.
+ */
+public class VirtualThreadChannelExecutor extends ThreadPoolTaskExecutor {
+
+    private final SimpleAsyncTaskExecutor delegate;
+
+    public VirtualThreadChannelExecutor(String threadNamePrefix, int maxConcurrency) {
+        setThreadNamePrefix(threadNamePrefix);
+        setCorePoolSize(1);
+        setMaxPoolSize(1);
+        delegate = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        delegate.setVirtualThreads(true);
+        delegate.setConcurrencyLimit(maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(task);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return delegate.submit(task);
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return delegate.submit(task);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.close();
+        super.shutdown();
+    }
+}
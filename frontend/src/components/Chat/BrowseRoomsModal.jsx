@@ -97,7 +97,7 @@ function BrowseRoomsModal({ onClose }) {
                     <div className="flex items-start space-x-3 flex-1 min-w-0">
                       {room.profilePicture ? (
                         <img
-                          src={resolveAvatarUrl(room.profilePicture)}
+                          src={resolveAvatarUrl(room.profilePicture, 'thumb')}
                           alt={room.name}
                           className="w-10 h-10 rounded-lg object-cover flex-shrink-0"
                         />
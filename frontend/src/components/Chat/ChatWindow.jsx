@@ -44,13 +44,13 @@ function ChatWindow() {
           <div className="flex items-center space-x-3">
             {currentRoom?.profilePicture ? (
               <img
-                src={resolveAvatarUrl(currentRoom.profilePicture)}
+                src={resolveAvatarUrl(currentRoom.profilePicture, 'thumb')}
                 alt={currentRoom.name}
                 className="w-10 h-10 rounded-full object-cover"
               />
             ) : currentPrivateChat?.profilePicture ? (
               <img
-                src={resolveAvatarUrl(currentPrivateChat.profilePicture)}
+                src={resolveAvatarUrl(currentPrivateChat.profilePicture, 'thumb')}
                 alt={currentPrivateChat.displayName || currentPrivateChat.username}
                 className="w-10 h-10 rounded-full object-cover"
               />
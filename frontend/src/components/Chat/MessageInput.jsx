@@ -3,8 +3,19 @@ import { useChat } from '../../hooks/useChat'
 
 function MessageInput() {
   const [message, setMessage] = useState('')
-  const { sendMessage, currentRoom, currentPrivateChat, wsConnected } = useChat()
+  const { sendMessage, sendAttachment, notifyTyping, typingUsers, currentRoom, currentPrivateChat, wsConnected } = useChat()
   const inputRef = useRef(null)
+  const fileInputRef = useRef(null)
+  const [uploadProgress, setUploadProgress] = useState(null)
+
+  const handleFileChange = async (e) => {
+    const file = e.target.files?.[0]
+    e.target.value = ''
+    if (!file) return
+    setUploadProgress(0)
+    await sendAttachment(file, setUploadProgress)
+    setUploadProgress(null)
+  }
 
   const handleSubmit = (e) => {
     e.preventDefault()
@@ -28,11 +39,26 @@ function MessageInput() {
   return (
     <div className="px-6 py-4 bg-white border-t border-gray-200">
       <form onSubmit={handleSubmit} className="flex items-end space-x-4">
+        <input ref={fileInputRef} type="file" className="hidden" onChange={handleFileChange} />
+        <button
+          type="button"
+          onClick={() => fileInputRef.current?.click()}
+          disabled={isDisabled || uploadProgress !== null}
+          className="p-3 text-gray-500 hover:text-primary-600 hover:bg-primary-50 rounded-full transition-colors disabled:opacity-50 disabled:cursor-not-allowed"
+          title="Attach a file"
+        >
+          <svg className="w-5 h-5" fill="none" stroke="currentColor" viewBox="0 0 24 24">
+            <path strokeLinecap="round" strokeLinejoin="round" strokeWidth={2} d="M15.172 7l-6.586 6.586a2 2 0 102.828 2.828l6.414-6.586a4 4 0 00-5.656-5.656l-6.415 6.585a6 6 0 108.486 8.486L20.5 13" />
+          </svg>
+        </button>
         <div className="flex-1 relative">
           <textarea
             ref={inputRef}
             value={message}
-            onChange={(e) => setMessage(e.target.value)}
+            onChange={(e) => {
+              setMessage(e.target.value)
+              notifyTyping()
+            }}
             onKeyDown={handleKeyDown}
             placeholder={
               isDisabled 
@@ -57,6 +83,18 @@ function MessageInput() {
         </button>
       </form>
       
+      {uploadProgress !== null && (
+        <p className="text-xs text-gray-500 mt-2">
+          Uploading... {Math.round(uploadProgress * 100)}%
+        </p>
+      )}
+
+      {typingUsers.length > 0 && (
+        <p className="text-xs text-gray-500 mt-2">
+          {typingUsers.join(', ')} {typingUsers.length === 1 ? 'is' : 'are'} typing...
+        </p>
+      )}
+
       {!wsConnected && (
         <p className="text-xs text-red-500 mt-2">
           Disconnected from server. Reconnecting...
@@ -88,7 +88,7 @@ function MessageList() {
                     {!isOwnMessage && showAvatar && (
                       message.senderProfilePicture ? (
                         <img
-                          src={resolveAvatarUrl(message.senderProfilePicture)}
+                          src={resolveAvatarUrl(message.senderProfilePicture, 'thumb')}
                           alt={message.senderDisplayName || message.senderUsername}
                           className="w-8 h-8 rounded-full object-cover flex-shrink-0"
                         />
@@ -115,10 +115,33 @@ function MessageList() {
                         </p>
                       )}
                       
+                      {/* Attachment */}
+                      {message.attachment && (
+                        message.messageType === 'IMAGE' ? (
+                          <a href={resolveAvatarUrl(`/api/attachments/${message.attachment.id}/download`)} target="_blank" rel="noreferrer">
+                            <img
+                              src={resolveAvatarUrl(`/api/attachments/${message.attachment.id}/download`, 'medium')}
+                              alt={message.attachment.fileName}
+                              loading="lazy"
+                              className="max-w-xs max-h-64 rounded-lg mb-1"
+                            />
+                          </a>
+                        ) : (
+                          <a
+                            href={resolveAvatarUrl(`/api/attachments/${message.attachment.id}/download`)}
+                            className="text-sm underline break-all"
+                          >
+                            {message.attachment.fileName} ({Math.ceil(message.attachment.size / 1024)} KB)
+                          </a>
+                        )
+                      )}
+
                       {/* Message Content */}
-                      <p className="text-sm whitespace-pre-wrap break-words">
-                        {message.content}
-                      </p>
+                      {!(message.attachment && message.content === message.attachment.fileName) && (
+                        <p className="text-sm whitespace-pre-wrap break-words">
+                          {message.content}
+                        </p>
+                      )}
                       
                       {/* Timestamp */}
                       <p className={`text-xs mt-1 ${
@@ -40,7 +40,7 @@ function Navbar() {
           <div className="flex items-center space-x-2">
             {user?.profilePicture ? (
               <img
-                src={resolveAvatarUrl(user.profilePicture)}
+                src={resolveAvatarUrl(user.profilePicture, 'thumb')}
                 alt={user.displayName || user.username}
                 className="w-8 h-8 rounded-full object-cover border-2 border-white/30"
               />
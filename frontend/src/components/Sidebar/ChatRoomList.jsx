@@ -71,7 +71,7 @@ function ChatRoomList({ onCreateRoom }) {
                 >
                   {room.profilePicture ? (
                     <img
-                      src={resolveAvatarUrl(room.profilePicture)}
+                      src={resolveAvatarUrl(room.profilePicture, 'thumb')}
                       alt={room.name}
                       className="w-10 h-10 rounded-lg object-cover"
                     />
@@ -88,7 +88,11 @@ function ChatRoomList({ onCreateRoom }) {
                     }`}>
                       {room.name}
                     </p>
-                    {room.description && (
+                    {room.lastMessagePreview ? (
+                      <p className="text-xs text-gray-500 truncate">
+                        {room.lastMessageSenderName}: {room.lastMessagePreview}
+                      </p>
+                    ) : room.description && (
                       <p className="text-xs text-gray-500 truncate">
                         {room.description}
                       </p>
@@ -1,16 +1,46 @@
-import { useState } from 'react'
+import { useState, useEffect } from 'react'
 import { useChat } from '../../hooks/useChat'
+import { useAuth } from '../../hooks/useAuth'
+import { chatService } from '../../services/chatService'
 import { resolveAvatarUrl } from '../../services/api'
 
+const SEARCH_DEBOUNCE_MS = 150
+
 function UserList() {
   const { users, onlineUsers, currentPrivateChat, selectPrivateChat } = useChat()
+  const { user: currentUser } = useAuth()
   const [searchTerm, setSearchTerm] = useState('')
+  const [searchResults, setSearchResults] = useState(null)
+
+  // Typeahead is answered by the server so it covers every user, not just the loaded page
+  useEffect(() => {
+    const term = searchTerm.trim()
+    if (!term) {
+      setSearchResults(null)
+      return
+    }
+    let cancelled = false
+    const timer = setTimeout(async () => {
+      try {
+        const response = await chatService.searchUsers(term)
+        if (!cancelled) {
+          setSearchResults((response.data || []).filter((u) => u.id !== currentUser?.id))
+        }
+      } catch (error) {
+        console.error('User search failed:', error)
+      }
+    }, SEARCH_DEBOUNCE_MS)
+    return () => {
+      cancelled = true
+      clearTimeout(timer)
+    }
+  }, [searchTerm, currentUser])
 
   const isOnline = (userId) => {
     return onlineUsers.some((u) => u.id === userId)
   }
 
-  const filteredUsers = users.filter((user) =>
+  const filteredUsers = searchResults ?? users.filter((user) =>
     user.username.toLowerCase().includes(searchTerm.toLowerCase()) ||
     user.displayName?.toLowerCase().includes(searchTerm.toLowerCase())
   )
@@ -72,7 +102,7 @@ function UserList() {
                     <div className="relative">
                       {user.profilePicture ? (
                         <img
-                          src={resolveAvatarUrl(user.profilePicture)}
+                          src={resolveAvatarUrl(user.profilePicture, 'thumb')}
                           alt={user.displayName || user.username}
                           className="w-10 h-10 rounded-full object-cover"
                         />
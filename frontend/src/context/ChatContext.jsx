@@ -1,25 +1,48 @@
-import { createContext, useState, useEffect, useCallback, useRef } from 'react'
+import { createContext, useState, useEffect, useCallback, useRef, useMemo } from 'react'
 import { useAuth } from '../hooks/useAuth'
 import { chatService } from '../services/chatService'
 import websocketService from '../services/websocketService'
+import { profileCache } from '../services/profileCache'
+import { attachmentService } from '../services/attachmentService'
 import toast from 'react-hot-toast'
 
 export const ChatContext = createContext(null)
 
+// Preloaded pages are only trusted shortly after bootstrap; later opens refetch
+const PRELOAD_TTL_MS = 30000
+
+const highestSeq = (messages) =>
+  messages.reduce((max, m) => (m.seq != null && (max == null || m.seq > max) ? m.seq : max), null)
+
+// Replayed and live frames can interleave after a resume: skip duplicates, keep sequence order
+function insertRoomMessage(messages, message) {
+  if (messages.some((m) => m.id === message.id)) return messages
+  const last = messages[messages.length - 1]
+  if (message.seq == null || last?.seq == null || last.seq < message.seq) return [...messages, message]
+  const index = messages.findIndex((m) => m.seq != null && m.seq > message.seq)
+  if (index === -1) return [...messages, message]
+  return [...messages.slice(0, index), message, ...messages.slice(index)]
+}
+
 export function ChatProvider({ children }) {
   const { user, isAuthenticated } = useAuth()
   const [rooms, setRooms] = useState([])
   const [users, setUsers] = useState([])
-  const [onlineUsers, setOnlineUsers] = useState([])
+  const [onlineUsernames, setOnlineUsernames] = useState(() => new Set())
   const [currentRoom, setCurrentRoom] = useState(null)
   const [currentPrivateChat, setCurrentPrivateChat] = useState(null)
   const [messages, setMessages] = useState([])
   const [wsConnected, setWsConnected] = useState(false)
   const [loading, setLoading] = useState(false)
   const [unreadCount, setUnreadCount] = useState(0)
+  const [typingByRoom, setTypingByRoom] = useState({})
   
   const subscriptionsRef = useRef(new Set())
   const currentPrivateChatRef = useRef(null)
+  const currentRoomRef = useRef(null)
+  const lastTypingSentRef = useRef(0)
+  // Recent messages delivered with the bootstrap payload, consumed on first room open
+  const preloadedMessagesRef = useRef({ at: 0, rooms: {} })
 
   // Connect WebSocket when authenticated
   useEffect(() => {
@@ -39,9 +62,8 @@ export function ChatProvider({ children }) {
       )
 
       // Load initial data
-      loadRooms()
+      loadBootstrap()
       loadUsers()
-      loadUnreadCount()
     }
 
     return () => {
@@ -50,28 +72,62 @@ export function ChatProvider({ children }) {
     }
   }, [isAuthenticated, user])
 
-  // Keep ref in sync with state to avoid stale closures in callbacks
+  // The server couldn't replay what the open room missed while disconnected; reload it
+  useEffect(() => {
+    return websocketService.addListener((event) => {
+      if (event.type !== 'resync' || !currentRoom || event.roomId !== currentRoom.id) return
+      chatService.getRoomMessages(currentRoom.id)
+        .then((response) => {
+          const loaded = (response.data || []).map((m) => profileCache.hydrate(m))
+          websocketService.trackRoomSeq(currentRoom.id, highestSeq(loaded))
+          setMessages(loaded)
+        })
+        .catch((error) => console.error('Failed to resync room messages:', error))
+    })
+  }, [currentRoom])
+
+  // Keep refs in sync with state to avoid stale closures in callbacks
   useEffect(() => {
     currentPrivateChatRef.current = currentPrivateChat
   }, [currentPrivateChat])
 
+  useEffect(() => {
+    currentRoomRef.current = currentRoom
+  }, [currentRoom])
+
   const setupSubscriptions = useCallback(() => {
     if (!user) return
 
-    // Subscribe to notifications
-    websocketService.subscribeToNotifications((notification) => {
-      if (notification.messageType === 'JOIN') {
-        setOnlineUsers((prev) => {
-          const exists = prev.some((u) => u.username === notification.senderUsername)
-          if (!exists && notification.senderUsername !== user.username) {
-            toast.success(`${notification.senderUsername} is now online`)
-          }
-          return prev
-        })
-        loadUsers()
-      } else if (notification.messageType === 'LEAVE') {
-        loadUsers()
-      }
+    // Subscribe to presence diffs, then load the snapshot they apply to
+    const applyPresenceDiff = (diff) => {
+      const cameOnline = diff.online || []
+      const wentOffline = diff.offline || []
+      setOnlineUsernames((prev) => {
+        const next = new Set(prev)
+        cameOnline.forEach((username) => next.add(username))
+        wentOffline.forEach((username) => next.delete(username))
+        return next
+      })
+      return cameOnline
+    }
+    // General carries everyone's presence; only contacts get a toast
+    websocketService.subscribeToGeneralPresence(applyPresenceDiff)
+    websocketService.subscribeToPresence((diff) => {
+      applyPresenceDiff(diff)
+        .filter((username) => username !== user.username)
+        .forEach((username) => toast.success(`${username} is now online`))
+    })
+    loadPresence()
+
+    // Keep cached sender profiles, and the messages rendered from them, current
+    websocketService.subscribeToProfiles((profile) => {
+      profileCache.put(profile)
+      setMessages((prev) => prev.map((m) => (m.senderId === profile.id ? profileCache.apply(m) : m)))
+    })
+
+    // Messages the server rejected or couldn't deliver live
+    websocketService.subscribeToErrors((error) => {
+      toast.error(error.message || 'Failed to send message')
     })
 
     // Subscribe to private messages - Spring routes based on authenticated Principal
@@ -113,6 +169,25 @@ export function ChatProvider({ children }) {
     })
   }, [user])
 
+  const loadBootstrap = async () => {
+    try {
+      const response = await chatService.getBootstrap()
+      const data = response.data || {}
+      setRooms(data.rooms || [])
+      setUnreadCount(data.unreadCount || 0)
+      setOnlineUsernames(new Set(data.onlineUsernames || []))
+      preloadedMessagesRef.current = { at: Date.now(), rooms: data.recentMessages || {} }
+      // Parts the server couldn't gather in time
+      const incomplete = data.incomplete || []
+      if (incomplete.includes('unreadCount')) loadUnreadCount()
+      if (incomplete.includes('onlineUsernames')) loadPresence()
+    } catch (error) {
+      console.error('Failed to bootstrap:', error)
+      loadRooms()
+      loadUnreadCount()
+    }
+  }
+
   const loadRooms = async () => {
     try {
       const response = await chatService.getRooms()
@@ -124,17 +199,28 @@ export function ChatProvider({ children }) {
 
   const loadUsers = async () => {
     try {
-      const [allUsersRes, onlineRes] = await Promise.all([
-        chatService.getAllUsers(),
-        chatService.getOnlineUsers(),
-      ])
-      setUsers((allUsersRes.data || []).filter((u) => u.id !== user?.id))
-      setOnlineUsers(onlineRes.data || [])
+      // First directory page; anyone else is reachable through search
+      const directoryRes = await chatService.getUserDirectory()
+      setUsers((directoryRes.data?.users || []).filter((u) => u.id !== user?.id))
     } catch (error) {
       console.error('Failed to load users:', error)
     }
   }
 
+  const loadPresence = async () => {
+    try {
+      const response = await chatService.getPresence()
+      setOnlineUsernames(new Set(response.data || []))
+    } catch (error) {
+      console.error('Failed to load presence:', error)
+    }
+  }
+
+  const onlineUsers = useMemo(
+    () => users.filter((u) => onlineUsernames.has(u.username)),
+    [users, onlineUsernames]
+  )
+
   const loadUnreadCount = async () => {
     try {
       const response = await chatService.getUnreadCount()
@@ -148,23 +234,51 @@ export function ChatProvider({ children }) {
     setCurrentPrivateChat(null)
     // Clear private chat ref immediately
     currentPrivateChatRef.current = null
+    currentRoomRef.current = room
     setCurrentRoom(room)
     setLoading(true)
     setMessages([])
 
     try {
-      // Load room messages
-      const response = await chatService.getRoomMessages(room.id)
-      setMessages(response.data || [])
+      // Load room messages, unless the bootstrap payload already carried them
+      const preload = preloadedMessagesRef.current
+      const preloaded = preload.rooms[room.id]
+      delete preload.rooms[room.id]
+      let loaded
+      if (preloaded && Date.now() - preload.at < PRELOAD_TTL_MS) {
+        loaded = preloaded.map((m) => profileCache.hydrate(m))
+      } else {
+        const response = await chatService.getRoomMessages(room.id)
+        loaded = (response.data || []).map((m) => profileCache.hydrate(m))
+      }
+      setMessages(loaded)
 
-      // Subscribe to room messages
+      // Subscribe to room messages, resuming after the loaded history; reconnects
+      // resume after the last message received instead of reloading
       const destination = `/topic/public.${room.id}`
       if (!subscriptionsRef.current.has(destination)) {
         websocketService.subscribeToPublicRoom(room.id, (message) => {
-          setMessages((prev) => [...prev, message])
-        })
+          // Subscriptions outlive room switches; only the open room is rendered
+          if (currentRoomRef.current?.id !== message.chatRoomId) return
+          setMessages((prev) => insertRoomMessage(prev, profileCache.hydrate(message)))
+          // Compact frames from an unknown or updated sender: fetch, then re-render
+          if (profileCache.isStale(message)) {
+            profileCache.load([message.senderId]).then(() => {
+              setMessages((prev) => prev.map((m) => (m.senderId === message.senderId ? profileCache.apply(m) : m)))
+            })
+          }
+        }, highestSeq(loaded))
         subscriptionsRef.current.add(destination)
       }
+
+      // Subscribe to typing state for this room
+      const typingDestination = `/topic/typing.${room.id}`
+      if (!subscriptionsRef.current.has(typingDestination)) {
+        websocketService.subscribeToTyping(room.id, (state) => {
+          setTypingByRoom((prev) => ({ ...prev, [state.roomId]: state.users || [] }))
+        })
+        subscriptionsRef.current.add(typingDestination)
+      }
     } catch (error) {
       console.error('Failed to load room messages:', error)
       toast.error('Failed to load messages')
@@ -208,6 +322,36 @@ export function ChatProvider({ children }) {
     }
   }, [currentRoom, currentPrivateChat])
 
+  // Files are uploaded over HTTP; the message only carries the attachment id
+  const sendAttachment = useCallback(async (file, onProgress) => {
+    try {
+      const attachment = await attachmentService.upload(file, onProgress)
+      if (currentRoom) {
+        websocketService.sendPublicMessage(currentRoom.id, '', attachment.id)
+      } else if (currentPrivateChat) {
+        websocketService.sendPrivateMessage(currentPrivateChat.id, '', attachment.id)
+      }
+    } catch (error) {
+      const message = error.response?.data?.message || 'Failed to upload file'
+      toast.error(message)
+    }
+  }, [currentRoom, currentPrivateChat])
+
+  const notifyTyping = useCallback(() => {
+    if (!currentRoom) return
+
+    // The server throttles too; this just avoids sending a frame per keystroke
+    const now = Date.now()
+    if (now - lastTypingSentRef.current < 1000) return
+    lastTypingSentRef.current = now
+    websocketService.sendTypingIndicator(currentRoom.id)
+  }, [currentRoom])
+
+  const typingUsers = useMemo(
+    () => (currentRoom ? (typingByRoom[currentRoom.id] || []).filter((u) => u !== user?.username) : []),
+    [currentRoom, typingByRoom, user]
+  )
+
   const createRoom = useCallback(async (name, description, isPublic = true) => {
     try {
       const response = await chatService.createRoom(name, description, isPublic)
@@ -256,9 +400,12 @@ export function ChatProvider({ children }) {
     wsConnected,
     loading,
     unreadCount,
+    typingUsers,
     selectRoom,
     selectPrivateChat,
     sendMessage,
+    sendAttachment,
+    notifyTyping,
     createRoom,
     joinRoom,
     joinRoomByCode,
@@ -20,6 +20,10 @@ export function useWebSocket() {
     if (destination.startsWith('/topic/public.')) {
       const roomId = destination.replace('/topic/public.', '')
       return websocketService.subscribeToPublicRoom(roomId, callback)
+    } else if (destination === '/user/queue/presence') {
+      return websocketService.subscribeToPresence(callback)
+    } else if (destination === '/topic/presence') {
+      return websocketService.subscribeToGeneralPresence(callback)
     } else if (destination === '/user/queue/private' || destination.startsWith('/user/')) {
       return websocketService.subscribeToPrivateMessages(callback)
     } else if (destination === '/topic/notifications') {
@@ -4,16 +4,19 @@ const API_BASE_URL = import.meta.env.VITE_API_URL || 'http://localhost:8080'
 
 /**
  * Resolves a profile picture URL to the full backend URL.
- * If the URL is relative (starts with /), it prepends the API base URL.
+ * If the URL is relative (starts with /), it prepends the API base URL and,
+ * when a size is given ('thumb', 'medium' or 'large'), asks the backend for
+ * that downscaled variant.
  * If the URL is already absolute or null/undefined, it returns as-is.
  */
-export const resolveAvatarUrl = (url) => {
+export const resolveAvatarUrl = (url, size) => {
   if (!url) return null
   if (url.startsWith('http://') || url.startsWith('https://')) {
     return url
   }
   if (url.startsWith('/')) {
-    return `${API_BASE_URL}${url}`
+    const sized = size ? `${url}${url.includes('?') ? '&' : '?'}size=${size}` : url
+    return `${API_BASE_URL}${sized}`
   }
   return url
 }
@@ -0,0 +1,40 @@
+import api from './api'
+
+const CHUNK_SIZE = 1024 * 1024
+const MAX_RETRIES = 3
+
+export const attachmentService = {
+  /**
+   * Uploads a file in chunks, resuming from the server's offset after a
+   * failed chunk. Resolves to the completed attachment.
+   */
+  async upload(file, onProgress) {
+    const created = await api.post('/attachments', {
+      fileName: file.name,
+      contentType: file.type,
+      size: file.size,
+    })
+    let attachment = created.data.data
+    let retries = 0
+
+    while (!attachment.complete) {
+      const offset = attachment.uploadedBytes
+      try {
+        const response = await api.put(
+          `/attachments/${attachment.id}/content`,
+          file.slice(offset, offset + CHUNK_SIZE),
+          { headers: { 'Content-Type': 'application/octet-stream', 'Upload-Offset': offset } }
+        )
+        attachment = response.data.data
+        retries = 0
+        onProgress?.(attachment.uploadedBytes / attachment.size)
+      } catch (error) {
+        if (error.response?.status === 413 || ++retries > MAX_RETRIES) throw error
+        // Ask the server how far it got and carry on from there
+        const status = await api.get(`/attachments/${attachment.id}`)
+        attachment = status.data.data
+      }
+    }
+    return attachment
+  },
+}
@@ -23,7 +23,8 @@ export const authService = {
 
   async logout() {
     try {
-      await api.post('/auth/logout')
+      // Revoke this device's refresh token; other sessions stay signed in
+      await api.post('/auth/logout', { refreshToken: localStorage.getItem('refreshToken') })
     } catch (error) {
       // Ignore errors on logout
     }
@@ -37,6 +38,11 @@ export const authService = {
     return response.data
   },
 
+  async updateProfile(profile) {
+    const response = await api.put('/users/me', profile)
+    return response.data
+  },
+
   getStoredUser() {
     const user = localStorage.getItem('user')
     return user ? JSON.parse(user) : null
@@ -1,6 +1,14 @@
 import api from './api'
 
 export const chatService = {
+  // Startup payload: rooms, unread count, presence and recent messages
+  async getBootstrap(roomIds = []) {
+    const response = await api.get('/bootstrap', {
+      params: roomIds.length ? { rooms: roomIds.join(',') } : {},
+    })
+    return response.data
+  },
+
   // Chat Rooms
   async getRooms() {
     const response = await api.get('/chat/rooms')
@@ -72,11 +80,34 @@ export const chatService = {
     return response.data
   },
 
+  // One page of the user directory; pass the previous nextCursor as `after`
+  async getUserDirectory(after = null, limit = 200) {
+    const response = await api.get('/users/directory', {
+      params: after ? { after, limit } : { limit },
+    })
+    return response.data
+  },
+
+  async searchUsers(query, limit = 20) {
+    const response = await api.get('/users/search', { params: { q: query, limit } })
+    return response.data
+  },
+
+  async getProfiles(ids) {
+    const response = await api.get('/users/profiles', { params: { ids: ids.join(',') } })
+    return response.data
+  },
+
   async getOnlineUsers() {
     const response = await api.get('/users/online')
     return response.data
   },
 
+  async getPresence() {
+    const response = await api.get('/users/presence')
+    return response.data
+  },
+
   async getUserById(userId) {
     const response = await api.get(`/users/${userId}`)
     return response.data
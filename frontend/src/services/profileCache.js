@@ -0,0 +1,101 @@
+import { chatService } from './chatService'
+
+// Batched lookups wait this long to collect ids from a burst of messages
+const BATCH_DELAY_MS = 50
+// The server accepts at most this many ids per lookup
+const MAX_IDS_PER_REQUEST = 100
+
+/**
+ * Sender profiles keyed by user id. Compact message frames carry only
+ * senderId and senderProfileVersion; this fills in the rest.
+ */
+class ProfileCache {
+  constructor() {
+    this.profiles = new Map()
+    this.pendingIds = new Set()
+    this.pendingWaiters = []
+    this.timer = null
+  }
+
+  put(profile) {
+    const known = this.profiles.get(profile.id)
+    if (!known || (profile.profileVersion ?? 0) >= (known.profileVersion ?? 0)) {
+      this.profiles.set(profile.id, profile)
+    }
+  }
+
+  // Full frames (e.g. history) double as profile updates
+  learn(message) {
+    if (message.senderId && message.senderUsername) {
+      this.put({
+        id: message.senderId,
+        username: message.senderUsername,
+        displayName: message.senderDisplayName,
+        profilePicture: message.senderProfilePicture,
+        profileVersion: message.senderProfileVersion ?? 0,
+      })
+    }
+  }
+
+  // True if the message's sender is unknown or known at an older version
+  isStale(message) {
+    const known = this.profiles.get(message.senderId)
+    return !known || (known.profileVersion ?? 0) < (message.senderProfileVersion ?? 0)
+  }
+
+  // Fills in a compact frame's sender; full frames are learned and returned as-is
+  hydrate(message) {
+    if (message.senderUsername) {
+      this.learn(message)
+      return message
+    }
+    return this.apply(message)
+  }
+
+  // Overwrites the message's sender fields with the cached profile, if any
+  apply(message) {
+    const profile = this.profiles.get(message.senderId)
+    if (!profile) return message
+    return {
+      ...message,
+      senderUsername: profile.username,
+      senderDisplayName: profile.displayName,
+      senderProfilePicture: profile.profilePicture,
+    }
+  }
+
+  // Resolves once the given ids have been fetched, batching concurrent calls
+  load(ids) {
+    ids.forEach((id) => this.pendingIds.add(id))
+    return new Promise((resolve) => {
+      this.pendingWaiters.push(resolve)
+      if (!this.timer) {
+        this.timer = setTimeout(() => this.flush(), BATCH_DELAY_MS)
+      }
+    })
+  }
+
+  async flush() {
+    const ids = [...this.pendingIds]
+    const waiters = this.pendingWaiters
+    this.pendingIds = new Set()
+    this.pendingWaiters = []
+    this.timer = null
+
+    const batches = []
+    for (let i = 0; i < ids.length; i += MAX_IDS_PER_REQUEST) {
+      batches.push(ids.slice(i, i + MAX_IDS_PER_REQUEST))
+    }
+    await Promise.all(batches.map(async (batch) => {
+      try {
+        const response = await chatService.getProfiles(batch)
+        ;(response.data || []).forEach((profile) => this.put(profile))
+      } catch (error) {
+        console.error('Failed to load profiles:', error)
+      }
+    }))
+    waiters.forEach((resolve) => resolve())
+  }
+}
+
+export const profileCache = new ProfileCache()
@@ -3,6 +3,17 @@ import { Client } from '@stomp/stompjs'
 // Use relative URL in development (goes through Vite proxy), absolute URL in production
 const WS_URL = import.meta.env.VITE_WS_URL || (import.meta.env.DEV ? '/ws' : 'http://localhost:8080/ws')
 
+// Plain WebSocket endpoint; SockJS is only used when it isn't available or fails to connect
+const NATIVE_WS_URL = import.meta.env.VITE_NATIVE_WS_URL || (import.meta.env.DEV
+  ? `${window.location.protocol === 'https:' ? 'wss' : 'ws'}://${window.location.host}/stomp`
+  : 'ws://localhost:8080/stomp')
+
+// Close code the server uses when it drops a session that can't keep up
+const SLOW_CONSUMER_CLOSE_CODE = 4001
+
+// Native connection attempts that must fail in a row before falling back to SockJS
+const NATIVE_FAILURES_BEFORE_FALLBACK = 3
+
 // Dynamic import SockJS to avoid SSR issues
 let SockJS = null
 if (typeof window !== 'undefined') {
@@ -15,10 +26,17 @@ class WebSocketService {
   constructor() {
     this.client = null
     this.subscriptions = new Map()
+    // destination -> { handler, headers }, kept so subscriptions survive a reconnect
+    this.handlers = new Map()
+    // roomId -> highest message sequence number seen, sent as resume-from on resubscribe
+    this.lastSeqByRoom = new Map()
     this.connected = false
     this.reconnectAttempts = 0
     this.maxReconnectAttempts = 10
     this.listeners = new Set()
+    this.nativeSupported = typeof WebSocket !== 'undefined'
+    this.useSockJs = !this.nativeSupported
+    this.nativeFailures = 0
   }
 
   async connect(token, onConnected, onError) {
@@ -40,7 +58,7 @@ class WebSocketService {
     }
 
     this.client = new Client({
-      webSocketFactory: () => new SockJS(WS_URL),
+      webSocketFactory: () => (this.useSockJs ? new SockJS(WS_URL) : new WebSocket(NATIVE_WS_URL)),
       connectHeaders: {
         Authorization: `Bearer ${token}`,
       },
@@ -55,7 +73,11 @@ class WebSocketService {
       onConnect: () => {
         this.connected = true
         this.reconnectAttempts = 0
+        if (!this.useSockJs) {
+          this.nativeFailures = 0
+        }
         console.log('WebSocket connected')
+        this.resubscribe()
         onConnected?.()
         this.notifyListeners({ type: 'connected' })
       },
@@ -69,6 +91,28 @@ class WebSocketService {
         onError?.(frame.headers.message)
         this.notifyListeners({ type: 'error', error: frame.headers.message })
       },
+      onWebSocketClose: (event) => {
+        if (!this.connected && !this.useSockJs) {
+          // Native WebSocket didn't get through. A single failure is usually a server
+          // restart; only repeated ones (e.g. blocked by a proxy) mean falling back to SockJS
+          this.nativeFailures += 1
+          if (this.nativeFailures >= NATIVE_FAILURES_BEFORE_FALLBACK) {
+            console.warn('Native WebSocket keeps failing, falling back to SockJS')
+            this.useSockJs = true
+          }
+        } else if (this.connected && this.useSockJs && this.nativeSupported) {
+          // A SockJS session ended: try native again for the next one
+          this.useSockJs = false
+          this.nativeFailures = 0
+        }
+        this.connected = false
+        // Subscriptions die with the socket; they are restored on reconnect
+        this.subscriptions.clear()
+        // Room messages shed on close are replayed when the subscriptions resume
+        if (event?.code === SLOW_CONSUMER_CLOSE_CODE) {
+          console.warn('Disconnected as a slow consumer, reconnecting')
+        }
+      },
       onWebSocketError: (event) => {
         console.error('WebSocket error:', event)
         onError?.(event)
@@ -84,12 +128,16 @@ class WebSocketService {
         subscription.unsubscribe()
       })
       this.subscriptions.clear()
+      this.handlers.clear()
+      this.lastSeqByRoom.clear()
       this.client.deactivate()
       this.connected = false
     }
   }
 
-  subscribeToPublicRoom(roomId, callback) {
+  // lastSeq: highest sequence number in the history already loaded, so the
+  // server replays whatever was sent between that load and this subscription
+  subscribeToPublicRoom(roomId, callback, lastSeq = null) {
     if (!this.client?.connected) {
       console.error('WebSocket not connected')
       return null
@@ -101,15 +149,34 @@ class WebSocketService {
       return this.subscriptions.get(destination)
     }
 
-    const subscription = this.client.subscribe(destination, (message) => {
+    this.trackRoomSeq(roomId, lastSeq)
+    const subscription = this.subscribeTracked(destination, (message) => {
+      // Too far behind to replay: the room's history has to be reloaded
+      if (message.headers.resync) {
+        this.notifyListeners({ type: 'resync', roomId })
+        return
+      }
       const body = JSON.parse(message.body)
+      this.trackRoomSeq(roomId, body.seq)
       callback(body)
-    })
+    }, () => this.resumeHeaders(roomId))
 
-    this.subscriptions.set(destination, subscription)
     return subscription
   }
 
+  trackRoomSeq(roomId, seq) {
+    if (seq == null) return
+    const last = this.lastSeqByRoom.get(roomId)
+    if (last == null || seq > last) {
+      this.lastSeqByRoom.set(roomId, seq)
+    }
+  }
+
+  resumeHeaders(roomId) {
+    const lastSeq = this.lastSeqByRoom.get(roomId)
+    return lastSeq != null ? { 'resume-from': String(lastSeq) } : {}
+  }
+
   subscribeToPrivateMessages(callback) {
     if (!this.client?.connected) {
       console.error('WebSocket not connected')
@@ -125,13 +192,12 @@ class WebSocketService {
     }
 
     console.log('Subscribing to private messages at:', destination)
-    const subscription = this.client.subscribe(destination, (message) => {
+    const subscription = this.subscribeTracked(destination, (message) => {
       console.log('Received private message:', message.body)
       const body = JSON.parse(message.body)
       callback(body)
     })
 
-    this.subscriptions.set(destination, subscription)
     return subscription
   }
 
@@ -147,24 +213,145 @@ class WebSocketService {
       return this.subscriptions.get(destination)
     }
 
-    const subscription = this.client.subscribe(destination, (message) => {
+    const subscription = this.subscribeTracked(destination, (message) => {
       const body = JSON.parse(message.body)
       callback(body)
     })
 
+    return subscription
+  }
+
+  // Profile changes ({ id, username, displayName, profilePicture, profileVersion })
+  subscribeToProfiles(callback) {
+    if (!this.client?.connected) {
+      console.error('WebSocket not connected')
+      return null
+    }
+
+    const destination = '/topic/profiles'
+
+    if (this.subscriptions.has(destination)) {
+      return this.subscriptions.get(destination)
+    }
+
+    const subscription = this.subscribeTracked(destination, (message) => {
+      const body = JSON.parse(message.body)
+      callback(body)
+    })
+
+    return subscription
+  }
+
+  subscribeToTyping(roomId, callback) {
+    if (!this.client?.connected) {
+      console.error('WebSocket not connected')
+      return null
+    }
+
+    // Coalesced "who is typing" state for one room ({ roomId, users: [...] })
+    const destination = `/topic/typing.${roomId}`
+
+    if (this.subscriptions.has(destination)) {
+      return this.subscriptions.get(destination)
+    }
+
+    const subscription = this.subscribeTracked(destination, (message) => {
+      const body = JSON.parse(message.body)
+      callback(body)
+    })
+
+    return subscription
+  }
+
+  subscribeToPresence(callback) {
+    if (!this.client?.connected) {
+      console.error('WebSocket not connected')
+      return null
+    }
+
+    // Batched presence diffs ({ online: [...], offline: [...] }) for our contacts outside General
+    const destination = '/user/queue/presence'
+
+    if (this.subscriptions.has(destination)) {
+      return this.subscriptions.get(destination)
+    }
+
+    const subscription = this.subscribeTracked(destination, (message) => {
+      const body = JSON.parse(message.body)
+      callback(body)
+    })
+
+    return subscription
+  }
+
+  subscribeToGeneralPresence(callback) {
+    if (!this.client?.connected) {
+      console.error('WebSocket not connected')
+      return null
+    }
+
+    // The same diffs, whole, for everyone in the General room: one broadcast frame
+    const destination = '/topic/presence'
+
+    if (this.subscriptions.has(destination)) {
+      return this.subscriptions.get(destination)
+    }
+
+    const subscription = this.subscribeTracked(destination, (message) => {
+      const body = JSON.parse(message.body)
+      callback(body)
+    })
+
+    return subscription
+  }
+
+  // Errors for this session's SEND frames ({ success: false, message, data? })
+  subscribeToErrors(callback) {
+    if (!this.client?.connected) {
+      console.error('WebSocket not connected')
+      return null
+    }
+
+    const destination = '/user/queue/errors'
+
+    if (this.subscriptions.has(destination)) {
+      return this.subscriptions.get(destination)
+    }
+
+    const subscription = this.subscribeTracked(destination, (message) => {
+      const body = JSON.parse(message.body)
+      callback(body)
+    })
+
+    return subscription
+  }
+
+  // headers: optional function returning SUBSCRIBE headers, evaluated on every (re)subscribe
+  subscribeTracked(destination, handler, headers = null) {
+    const subscription = this.client.subscribe(destination, handler, headers?.() || {})
     this.subscriptions.set(destination, subscription)
+    this.handlers.set(destination, { handler, headers })
     return subscription
   }
 
+  resubscribe() {
+    this.handlers.forEach(({ handler, headers }, destination) => {
+      if (!this.subscriptions.has(destination)) {
+        this.subscriptions.set(destination, this.client.subscribe(destination, handler, headers?.() || {}))
+      }
+    })
+  }
+
   unsubscribe(destination) {
     const subscription = this.subscriptions.get(destination)
     if (subscription) {
       subscription.unsubscribe()
       this.subscriptions.delete(destination)
     }
+    this.handlers.delete(destination)
   }
 
-  sendPublicMessage(roomId, content) {
+  sendPublicMessage(roomId, content, attachmentId = null) {
     if (!this.client?.connected) {
       console.error('WebSocket not connected')
       return
@@ -172,15 +359,17 @@ class WebSocketService {
 
     this.client.publish({
       destination: `/app/chat.public.${roomId}`,
+      headers: { 'sent-at': String(Date.now()) },
       body: JSON.stringify({
         chatRoomId: roomId,
         content,
         messageType: 'TEXT',
+        ...(attachmentId && { attachmentId }),
       }),
     })
   }
 
-  sendPrivateMessage(recipientId, content) {
+  sendPrivateMessage(recipientId, content, attachmentId = null) {
     if (!this.client?.connected) {
       console.error('WebSocket not connected')
       return
@@ -188,10 +377,12 @@ class WebSocketService {
 
     this.client.publish({
       destination: `/app/chat.private.${recipientId}`,
+      headers: { 'sent-at': String(Date.now()) },
       body: JSON.stringify({
         recipientId,
         content,
         messageType: 'TEXT',
+        ...(attachmentId && { attachmentId }),
         isPrivate: true,
       }),
     })
@@ -200,12 +391,10 @@ class WebSocketService {
   sendTypingIndicator(roomId) {
     if (!this.client?.connected) return
 
+    // The server ignores the body and throttles per user per room
     this.client.publish({
       destination: `/app/chat.typing.${roomId}`,
-      body: JSON.stringify({
-        chatRoomId: roomId,
-        content: 'typing',
-      }),
+      body: '',
     })
   }
 
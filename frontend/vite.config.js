@@ -19,6 +19,11 @@ export default defineConfig({
         target: 'http://localhost:8080',
         ws: true,
         changeOrigin: true
+      },
+      '/stomp': {
+        target: 'http://localhost:8080',
+        ws: true,
+        changeOrigin: true
       }
     }
   },